@@ -0,0 +1,149 @@
+package cse403.sp2020.tidy.data;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreSettings;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import cse403.sp2020.tidy.data.model.HouseholdModel;
+import cse403.sp2020.tidy.data.model.TaskModel;
+import cse403.sp2020.tidy.ui.MainActivity;
+
+/*
+ * Launches the main screen without and then with a saved household snapshot, and compares the time
+ * from launch to the first frame showing chores. Needs the Firestore emulator, results are written
+ * to logcat under FirstFrame.
+ */
+
+@RunWith(AndroidJUnit4.class)
+public class FirstFrameLatencyTest {
+  private static final String TAG = "FirstFrame";
+  private static final String USER_ID = "firstFrameTest_userId";
+  private static final int TASKS = 50;
+  private static final long TIMEOUT_MILLIS = 10000;
+
+  private Context mContext;
+  private FirebaseFirestore mFirestore;
+  private HouseholdSnapshotStore mStore;
+
+  @Before
+  public void setUp() throws Exception {
+    // The screen uses the shared repository, which is built on the default instance
+    FirebaseFirestoreSettings settings =
+        new FirebaseFirestoreSettings.Builder()
+            .setHost("10.0.2.2:8080")
+            .setSslEnabled(false)
+            .setPersistenceEnabled(false)
+            .build();
+
+    mFirestore = FirebaseFirestore.getInstance();
+    mFirestore.setFirestoreSettings(settings);
+
+    mContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+    mStore = new HouseholdSnapshotStore(mContext.getFilesDir());
+    mStore.delete(USER_ID);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    InstrumentationRegistry.getInstrumentation()
+        .runOnMainSync(() -> HouseholdRepository.getInstance().reset());
+    mStore.delete(USER_ID);
+    mFirestore.terminate();
+  }
+
+  @Test
+  public void firstFrameWithAndWithoutSnapshot() throws InterruptedException {
+    ModelInterface setup = new ModelInterface(mFirestore);
+    final CallbackCounter counter = new CallbackCounter();
+
+    counter.increment();
+    setup.setCurrentUser(USER_ID, user -> counter.decrement());
+    counter.block();
+    if (setup.getHousehold() == null) {
+      counter.increment();
+      setup.createHousehold(new HouseholdModel(), household -> counter.decrement());
+      counter.block();
+
+      List<TaskModel> tasks = new ArrayList<>();
+      for (int i = 0; i < TASKS; i++) {
+        TaskModel newTask = new TaskModel();
+        newTask.setName("Task " + i);
+        newTask.setPriority(i);
+        newTask.setAssignedTo(i % 2 == 0 ? USER_ID : null);
+        tasks.add(newTask);
+      }
+      counter.increment();
+      setup.addTasks(tasks, added -> counter.decrement());
+      counter.block();
+    }
+    setup.cleanUp();
+
+    // Nothing saved yet, the chores come from the server
+    String[] source = new String[1];
+    long withoutSnapshot = launch(source);
+    assertEquals("live data", source[0]);
+
+    // Leaving the screen saved what it showed
+    long deadline = SystemClock.elapsedRealtime() + TIMEOUT_MILLIS;
+    HouseholdSnapshotStore.Snapshot saved = mStore.load(USER_ID);
+    while (saved == null && SystemClock.elapsedRealtime() < deadline) {
+      Thread.sleep(50);
+      saved = mStore.load(USER_ID);
+    }
+    assertNotNull(saved);
+    assertFalse(saved.getMyTasks().isEmpty());
+
+    long withSnapshot = launch(source);
+    Log.i(
+        TAG,
+        "first chores frame without snapshot "
+            + withoutSnapshot
+            + " ms, with snapshot "
+            + withSnapshot
+            + " ms (from "
+            + source[0]
+            + ")");
+  }
+
+  // Launches the main screen from scratch and waits for its first chores frame
+  private long launch(String[] source) throws InterruptedException {
+    // The user is looked up again, like on a new launch
+    InstrumentationRegistry.getInstrumentation()
+        .runOnMainSync(() -> HouseholdRepository.getInstance().reset());
+
+    Intent intent = new Intent(mContext, MainActivity.class);
+    intent.putExtra("tidy_user_id", USER_ID);
+    final long[] millis = new long[] {-1};
+    try (ActivityScenario<MainActivity> scenario = ActivityScenario.launch(intent)) {
+      long deadline = SystemClock.elapsedRealtime() + TIMEOUT_MILLIS;
+      while (millis[0] < 0 && SystemClock.elapsedRealtime() < deadline) {
+        Thread.sleep(50);
+        scenario.onActivity(
+            activity -> {
+              millis[0] = activity.getFirstFrameMillis();
+              source[0] = activity.getFirstFrameSource();
+            });
+      }
+    }
+    assertTrue("No chores shown within " + TIMEOUT_MILLIS + " ms", millis[0] >= 0);
+    return millis[0];
+  }
+}
@@ -0,0 +1,96 @@
+package cse403.sp2020.tidy.data;
+
+import android.content.Context;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.firebase.Timestamp;
+import cse403.sp2020.tidy.data.model.HouseholdModel;
+import cse403.sp2020.tidy.data.model.TaskModel;
+import cse403.sp2020.tidy.data.model.UserModel;
+
+/* Checks that saved household snapshots read back the same and stay with their user. */
+
+@RunWith(AndroidJUnit4.class)
+public class HouseholdSnapshotStoreTest {
+  private static final String USER_ID = "snapshotStoreTest_userId";
+
+  private HouseholdSnapshotStore mStore;
+
+  @Before
+  public void setUp() {
+    Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+    mStore = new HouseholdSnapshotStore(context.getCacheDir());
+    mStore.delete(USER_ID);
+  }
+
+  @Test
+  public void roundTrip() {
+    assertNull(mStore.load(USER_ID));
+
+    HouseholdModel household = new HouseholdModel();
+    household.setHouseholdId("household");
+    household.setName("Home");
+
+    List<UserModel> users = new ArrayList<>();
+    UserModel user = new UserModel();
+    user.setFirebaseId(USER_ID);
+    user.setFirstName("First");
+    users.add(user);
+
+    List<TaskModel> tasks = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      TaskModel task = new TaskModel();
+      task.setTaskId("task" + i);
+      task.setName("Task " + i);
+      task.setPriority(3 - i);
+      task.setAssignedTo(i == 0 ? USER_ID : null);
+      task.setCompleted(i == 1);
+      tasks.add(task);
+    }
+    tasks.get(2).setAssignedDate(new Timestamp(1590000000, 5));
+    List<TaskModel> myTasks = new ArrayList<>();
+    myTasks.add(tasks.get(0));
+
+    mStore.save(USER_ID, household, users, tasks, myTasks);
+    HouseholdSnapshotStore.Snapshot snapshot = mStore.load(USER_ID);
+    assertNotNull(snapshot);
+    assertEquals("household", snapshot.getHousehold().getHouseholdId());
+    assertEquals("Home", snapshot.getHousehold().getName());
+    assertEquals(1, snapshot.getUsers().size());
+    assertEquals("First", snapshot.getUsers().get(0).getFirstName());
+    assertNull(snapshot.getUsers().get(0).getLastName());
+
+    // Order is kept, it is the order the tasks were shown in
+    assertEquals(3, snapshot.getTasks().size());
+    for (int i = 0; i < 3; i++) {
+      TaskModel task = snapshot.getTasks().get(i);
+      assertEquals("task" + i, task.getTaskId());
+      assertEquals(3 - i, task.getPriority());
+      assertEquals(i == 1, task.isCompleted());
+    }
+    assertEquals(USER_ID, snapshot.getTasks().get(0).getAssignedTo());
+    assertNull(snapshot.getTasks().get(1).getAssignedDate());
+    assertEquals(1590000000, snapshot.getTasks().get(2).getAssignedDate().getSeconds());
+
+    // The user's tasks are kept on their own
+    assertEquals(1, snapshot.getMyTasks().size());
+    assertEquals("task0", snapshot.getMyTasks().get(0).getTaskId());
+
+    // Other users don't see it
+    assertNull(mStore.load("someone_else"));
+
+    mStore.delete(USER_ID);
+    assertNull(mStore.load(USER_ID));
+  }
+}
@@ -0,0 +1,118 @@
+package cse403.sp2020.tidy.data;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreSettings;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import cse403.sp2020.tidy.data.model.HouseholdModel;
+import cse403.sp2020.tidy.data.model.TaskModel;
+
+/*
+ * Compares the time from setCurrentUser to the first task list with lookups in order and in
+ * parallel, and checks that both find a user in the directory in two round trips. Needs the
+ * Firestore emulator, results are written to logcat under LoginLatency.
+ */
+
+public class LoginLatencyTest {
+  private static final String TAG = "LoginLatency";
+  private static final int TASKS = 50;
+  private static final int LOGINS = 10;
+
+  private FirebaseFirestore mFirestore;
+
+  @Before
+  public void setUp() throws Exception {
+    // 10.0.2.2 is the special IP address to connect to the 'localhost' of
+    // the host computer from an Android emulator.
+    FirebaseFirestoreSettings settings =
+        new FirebaseFirestoreSettings.Builder()
+            .setHost("10.0.2.2:8080")
+            .setSslEnabled(false)
+            .setPersistenceEnabled(false)
+            .build();
+
+    mFirestore = FirebaseFirestore.getInstance();
+    mFirestore.setFirestoreSettings(settings);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    mFirestore.terminate();
+  }
+
+  @Test
+  public void timeToFirstTaskList() throws InterruptedException {
+    final String userId = "timeToFirstTaskList_userId";
+    ModelInterface setup = new ModelInterface(mFirestore);
+    final CallbackCounter counter = new CallbackCounter();
+
+    counter.increment();
+    setup.setCurrentUser(userId, user -> counter.decrement());
+    counter.block();
+    counter.increment();
+    setup.createHousehold(new HouseholdModel(), household -> counter.decrement());
+    counter.block();
+    final String householdId = setup.getHousehold().getHouseholdId();
+
+    List<TaskModel> tasks = new ArrayList<>();
+    for (int i = 0; i < TASKS; i++) {
+      TaskModel newTask = new TaskModel();
+      newTask.setName("Task " + i);
+      tasks.add(newTask);
+    }
+    counter.increment();
+    setup.addTasks(tasks, added -> counter.decrement());
+    counter.block();
+    setup.cleanUp();
+
+    for (boolean parallel : new boolean[] {false, true}) {
+      List<Long> times = new ArrayList<>();
+      for (int i = 0; i < LOGINS; i++) {
+        // A new model each time, like a new launch
+        final ModelInterface model = new ModelInterface(mFirestore);
+        model.setParallelLookups(parallel);
+        final long start = SystemClock.elapsedRealtimeNanos();
+        final boolean[] done = new boolean[] {false};
+        counter.increment();
+        model.setCurrentUser(
+            userId,
+            user -> {
+              assertNotNull(user);
+              assertEquals(householdId, model.getHousehold().getHouseholdId());
+              // The directory, then the user and household together
+              assertEquals(2, model.getLoginRoundTrips());
+              model.setTasksListener(
+                  list -> {
+                    if (!done[0] && list != null && list.size() == TASKS) {
+                      done[0] = true;
+                      times.add(SystemClock.elapsedRealtimeNanos() - start);
+                      counter.decrement();
+                    }
+                  });
+            });
+        counter.block();
+        model.cleanUp();
+      }
+
+      Collections.sort(times);
+      Log.i(
+          TAG,
+          (parallel ? "parallel" : "in order")
+              + ": first task list median "
+              + times.get(times.size() / 2) / 1e6
+              + " ms");
+    }
+  }
+}
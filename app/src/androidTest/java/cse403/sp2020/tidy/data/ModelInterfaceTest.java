@@ -6,9 +6,22 @@ import org.junit.Test;
 
 import static org.junit.Assert.*;
 
+import android.os.Looper;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.FirebaseFirestoreException;
 import com.google.firebase.firestore.FirebaseFirestoreSettings;
+import com.google.firebase.firestore.Source;
 import com.google.firebase.firestore.FirebaseFirestore;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
 import cse403.sp2020.tidy.data.model.HouseholdModel;
 import cse403.sp2020.tidy.data.model.TaskModel;
 import cse403.sp2020.tidy.data.model.UserModel;
@@ -68,6 +81,7 @@ public class ModelInterfaceTest {
     newTask.setName("Name");
     newTask.setDescription("Description");
     newTask.setPriority(1);
+    final TaskModel[] added = new TaskModel[1];
     counter.increment(2); // two callbacks to wait for
     listenerCounter.increment();
     model.addTask(
@@ -75,27 +89,31 @@ public class ModelInterfaceTest {
         task -> {
           counter.decrement();
           assertNotNull(task);
-          assertEquals(newTask.getTaskId(), task.getTaskId());
+          assertNotNull(task.getTaskId());
           assertEquals("Name", task.getName());
           assertEquals("Description", task.getDescription());
           assertEquals(1, task.getPriority());
+          added[0] = task;
         });
     counter.block();
     assertEquals(1, model.getTasks().size());
+    // The new id is only set on the returned copy
+    assertNull(newTask.getTaskId());
+    final String newTaskId = added[0].getTaskId();
 
     // Update the task
     TaskModel updateTask = new TaskModel();
     updateTask.setName("Name2");
     updateTask.setDescription("Description2");
     updateTask.setPriority(2);
-    updateTask.setTaskId(newTask.getTaskId());
+    updateTask.setTaskId(newTaskId);
     counter.increment(2);
     model.updateTask(
         updateTask,
         task -> {
           counter.decrement();
           assertNotNull(task);
-          assertEquals(newTask.getTaskId(), task.getTaskId());
+          assertEquals(newTaskId, task.getTaskId());
           assertEquals("Name2", task.getName());
           assertEquals("Description2", task.getDescription());
           assertEquals(2, task.getPriority());
@@ -108,7 +126,7 @@ public class ModelInterfaceTest {
     deleteTask.setName("ignore");
     deleteTask.setDescription("ignore");
     deleteTask.setPriority(3);
-    deleteTask.setTaskId(newTask.getTaskId());
+    deleteTask.setTaskId(newTaskId);
     counter.increment(2);
     listenerCounter.decrement();
     model.removeTask(
@@ -117,7 +135,7 @@ public class ModelInterfaceTest {
           counter.decrement();
           assertNotNull(task);
           // Should be same values as the update, not the delete task
-          assertEquals(newTask.getTaskId(), task.getTaskId());
+          assertEquals(newTaskId, task.getTaskId());
           assertEquals("Name2", task.getName());
           assertEquals("Description2", task.getDescription());
           assertEquals(2, task.getPriority());
@@ -256,6 +274,526 @@ public class ModelInterfaceTest {
     model.cleanUp();
   }
 
+  @Test
+  // Tests that the task listener only reports what changed
+  public void taskChangesTest() throws InterruptedException {
+    ModelInterface model = new ModelInterface(mFirestore);
+    final String userId = "taskChangesTest_userId";
+    final CallbackCounter counter = new CallbackCounter();
+    final ChangeSet<?>[] lastChanges = new ChangeSet<?>[1];
+
+    basicSetup(model, counter, userId);
+
+    // Initial snapshot of an empty household
+    counter.increment();
+    model.setTaskChangesListener(
+        changes -> {
+          assertNotNull(changes);
+          lastChanges[0] = changes;
+          counter.decrement();
+        });
+    counter.block();
+    assertTrue(lastChanges[0].isEmpty());
+
+    // Add a task
+    TaskModel newTask = new TaskModel();
+    newTask.setName("Name");
+    newTask.setPriority(1);
+    counter.increment(2);
+    model.addTask(newTask, task -> counter.decrement());
+    counter.block();
+    assertEquals(1, lastChanges[0].getAdded().size());
+    assertEquals(0, lastChanges[0].getModified().size());
+    assertEquals(1, lastChanges[0].getAll().size());
+
+    // Update it
+    TaskModel updateTask = new TaskModel(newTask);
+    updateTask.setName("Name2");
+    counter.increment(2);
+    model.updateTask(updateTask, task -> counter.decrement());
+    counter.block();
+    assertEquals(0, lastChanges[0].getAdded().size());
+    assertEquals(1, lastChanges[0].getModified().size());
+    assertEquals("Name2", ((TaskModel) lastChanges[0].getModified().get(0)).getName());
+
+    // Remove it
+    counter.increment(2);
+    model.removeTask(newTask, task -> counter.decrement());
+    counter.block();
+    assertEquals(1, lastChanges[0].getRemoved().size());
+    assertEquals(0, lastChanges[0].getAll().size());
+    assertEquals(0, model.getTasks().size());
+
+    model.cleanUp();
+  }
+
+  @Test
+  // Tests that async lookups share calls in flight and fail instead of returning null
+  public void asyncTest() throws Exception {
+    ModelInterface model = new ModelInterface(mFirestore);
+    final String userId = "asyncTest_userId";
+    final CallbackCounter counter = new CallbackCounter();
+
+    Task<UserModel> first = model.setCurrentUserAsync(userId);
+    Task<UserModel> second = model.setCurrentUserAsync(userId);
+    assertSame(first, second);
+    assertEquals(1, model.getSharedAsyncCalls());
+    assertEquals(userId, Tasks.await(first, 10, TimeUnit.SECONDS).getFirebaseId());
+
+    // Finished calls are not shared
+    Task<UserModel> third = model.setCurrentUserAsync(userId);
+    assertNotSame(first, third);
+    Tasks.await(third, 10, TimeUnit.SECONDS);
+
+    counter.increment();
+    model.createHousehold(new HouseholdModel(), household -> counter.decrement());
+    counter.block();
+
+    try {
+      Tasks.await(model.fetchTaskAsync("missing", Source.SERVER), 10, TimeUnit.SECONDS);
+      fail("Fetching a missing task should fail");
+    } catch (ExecutionException e) {
+      assertNotNull(e.getCause());
+    }
+
+    model.cleanUp();
+  }
+
+  @Test
+  // Tests that completed tasks are moved to the archive and can be read back from it
+  public void archiveTest() throws InterruptedException {
+    ModelInterface model = new ModelInterface(mFirestore);
+    final String userId = "archiveTest_userId";
+    final CallbackCounter counter = new CallbackCounter();
+
+    basicSetup(model, counter, userId);
+
+    TaskModel done = new TaskModel();
+    done.setName("Done");
+    TaskModel open = new TaskModel();
+    open.setName("Open");
+    final String[] doneId = new String[1];
+    counter.increment(2);
+    model.addTask(
+        done,
+        task -> {
+          doneId[0] = task.getTaskId();
+          counter.decrement();
+        });
+    model.addTask(open, task -> counter.decrement());
+    counter.block();
+
+    counter.increment();
+    model.setTaskCompleted(doneId[0], true, taskId -> counter.decrement());
+    counter.block();
+
+    // A cutoff in the future archives every completed task
+    counter.increment();
+    model.archiveCompletedTasks(
+        -60000,
+        archived -> {
+          assertNotNull(archived);
+          assertEquals(1, archived.size());
+          assertEquals("Done", archived.get(0).getName());
+          counter.decrement();
+        });
+    counter.block();
+
+    counter.increment();
+    model.fetchTask(
+        doneId[0],
+        Source.SERVER,
+        task -> {
+          assertNull(task);
+          counter.decrement();
+        });
+    counter.block();
+
+    counter.increment();
+    model.fetchArchivedTasks(
+        10,
+        null,
+        tasks -> {
+          assertNotNull(tasks);
+          assertEquals(1, tasks.size());
+          assertTrue(tasks.get(0).isCompleted());
+          assertNotNull(tasks.get(0).getCompletedDate());
+          counter.decrement();
+        });
+    counter.block();
+
+    model.cleanUp();
+  }
+
+  @Test
+  // Tests that ordered task lists stay sorted by priority as tasks change
+  public void orderedTasksTest() throws InterruptedException {
+    ModelInterface model = new ModelInterface(mFirestore);
+    model.setOrderedTasks(true);
+    final String userId = "orderedTasksTest_userId";
+    final CallbackCounter counter = new CallbackCounter();
+
+    basicSetup(model, counter, userId);
+
+    counter.increment();
+    model.setTasksListener(tasks -> counter.decrement());
+    counter.block();
+
+    int[] priorities = new int[] {3, 1, 2};
+    List<TaskModel> added = new ArrayList<>();
+    for (int priority : priorities) {
+      TaskModel newTask = new TaskModel();
+      newTask.setName("Priority " + priority);
+      newTask.setPriority(priority);
+      counter.increment(2);
+      model.addTask(newTask, task -> counter.decrement());
+      counter.block();
+      added.add(newTask);
+    }
+    assertPriorities(model.getTasks(), 1, 2, 3);
+
+    // Moving a task to the front places it there
+    TaskModel updateTask = new TaskModel(added.get(0));
+    updateTask.setPriority(0);
+    counter.increment(2);
+    model.updateTask(updateTask, task -> counter.decrement());
+    counter.block();
+    assertPriorities(model.getTasks(), 0, 1, 2);
+    assertEquals("Priority 3", model.getTasks().get(0).getName());
+
+    counter.increment(2);
+    model.removeTask(added.get(1), task -> counter.decrement());
+    counter.block();
+    assertPriorities(model.getTasks(), 0, 2);
+
+    model.cleanUp();
+  }
+
+  private static void assertPriorities(List<TaskModel> tasks, int... priorities) {
+    assertEquals(priorities.length, tasks.size());
+    for (int i = 0; i < priorities.length; i++) {
+      assertEquals(priorities[i], tasks.get(i).getPriority());
+    }
+  }
+
+  @Test
+  // Tests that the my tasks listener only gets the tasks assigned to the user
+  public void myTasksListenerTest() throws InterruptedException {
+    ModelInterface model = new ModelInterface(mFirestore);
+    final String userId = "myTasksListenerTest_userId";
+    final CallbackCounter counter = new CallbackCounter();
+    final List<List<TaskModel>> lastTasks = new ArrayList<>();
+
+    basicSetup(model, counter, userId);
+
+    counter.increment();
+    model.setMyTasksListener(
+        tasks -> {
+          assertNotNull(tasks);
+          lastTasks.add(0, tasks);
+          counter.decrement();
+        });
+    counter.block();
+    assertTrue(lastTasks.get(0).isEmpty());
+
+    // Assigned to the user, shows up
+    TaskModel mine = new TaskModel();
+    mine.setName("Mine");
+    mine.setAssignedTo(userId);
+    counter.increment(2);
+    model.addTask(mine, task -> counter.decrement());
+    counter.block();
+    assertEquals(1, lastTasks.get(0).size());
+    assertEquals("Mine", lastTasks.get(0).get(0).getName());
+
+    // Not assigned, the listener is not called for it
+    TaskModel other = new TaskModel();
+    other.setName("Other");
+    counter.increment();
+    model.addTask(other, task -> counter.decrement());
+    counter.block();
+    assertEquals(1, lastTasks.get(0).size());
+
+    // Lookups work without the full tasks listener
+    String mineId = lastTasks.get(0).get(0).getTaskId();
+    assertEquals("Mine", model.getTaskById(mineId).getName());
+    assertEquals(1, model.getTasksAssignedTo(userId).size());
+
+    model.removeMyTasksListener();
+    model.cleanUp();
+  }
+
+  @Test
+  // Tests completion and priority changes that only write one field
+  public void taskFieldUpdateTest() throws InterruptedException {
+    ModelInterface model = new ModelInterface(mFirestore);
+    final String userId = "taskFieldUpdateTest_userId";
+    final CallbackCounter counter = new CallbackCounter();
+
+    basicSetup(model, counter, userId);
+
+    counter.increment();
+    model.setTasksListener(tasks -> counter.decrement());
+    counter.block();
+
+    TaskModel newTask = new TaskModel();
+    newTask.setName("Name");
+    newTask.setDescription("Desc");
+    newTask.setPriority(3);
+    final String[] newTaskId = new String[1];
+    counter.increment(2);
+    model.addTask(
+        newTask,
+        task -> {
+          newTaskId[0] = task.getTaskId();
+          counter.decrement();
+        });
+    counter.block();
+    final String taskId = newTaskId[0];
+
+    // Completion leaves the other fields alone
+    counter.increment(2);
+    model.setTaskCompleted(
+        taskId,
+        true,
+        id -> {
+          assertEquals(taskId, id);
+          counter.decrement();
+        });
+    counter.block();
+    assertTrue(model.getTaskById(taskId).isCompleted());
+    assertEquals("Desc", model.getTaskById(taskId).getDescription());
+    assertEquals(3, model.getTaskById(taskId).getPriority());
+
+    // Priority changes add up, and are sent as one write
+    counter.increment(3);
+    model.adjustTaskPriority(
+        taskId,
+        2,
+        id -> {
+          assertEquals(taskId, id);
+          counter.decrement();
+        });
+    model.adjustTaskPriority(
+        taskId,
+        -1,
+        id -> {
+          assertEquals(taskId, id);
+          counter.decrement();
+        });
+    counter.block();
+    assertEquals(4, model.getTaskById(taskId).getPriority());
+    assertTrue(model.getTaskById(taskId).isCompleted());
+    assertEquals(1, model.getSavedTaskWrites());
+
+    // Quick taps can't take the priority below zero
+    counter.increment(3);
+    model.adjustTaskPriority(
+        taskId,
+        -3,
+        id -> {
+          assertEquals(taskId, id);
+          counter.decrement();
+        });
+    model.adjustTaskPriority(
+        taskId,
+        -3,
+        id -> {
+          assertEquals(taskId, id);
+          counter.decrement();
+        });
+    counter.block();
+    assertEquals(0, model.getTaskById(taskId).getPriority());
+    assertEquals(2, model.getSavedTaskWrites());
+
+    // Missing tasks are not created
+    counter.increment(2);
+    model.setTaskCompleted(
+        "missing",
+        true,
+        id -> {
+          assertNull(id);
+          counter.decrement();
+        });
+    model.adjustTaskPriority(
+        "missing",
+        1,
+        id -> {
+          assertNull(id);
+          counter.decrement();
+        });
+    counter.block();
+    assertNull(model.getTaskById("missing"));
+
+    model.cleanUp();
+  }
+
+  @Test
+  // Tests that snapshots are processed on the snapshot executor
+  public void backgroundListenerTest() throws InterruptedException {
+    ModelInterface model = new ModelInterface(mFirestore);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    model.setSnapshotExecutor(executor);
+    final String userId = "backgroundListenerTest_userId";
+    final CallbackCounter counter = new CallbackCounter();
+    final boolean[] onMainThread = new boolean[] {false};
+
+    basicSetup(model, counter, userId);
+
+    // Initial snapshot of an empty household
+    counter.increment();
+    model.setTaskChangesListener(
+        changes -> {
+          assertNotNull(changes);
+          onMainThread[0] |= Looper.myLooper() == Looper.getMainLooper();
+          counter.decrement();
+        });
+    counter.block();
+
+    // Add a task, it is indexed before the listener is called
+    TaskModel newTask = new TaskModel();
+    newTask.setName("Name");
+    newTask.setAssignedTo(userId);
+    final String[] newTaskId = new String[1];
+    counter.increment(2);
+    model.addTask(
+        newTask,
+        task -> {
+          newTaskId[0] = task.getTaskId();
+          counter.decrement();
+        });
+    counter.block();
+    assertFalse(onMainThread[0]);
+    assertEquals(1, model.getTasks().size());
+    assertNotNull(model.getTaskById(newTaskId[0]));
+    assertEquals(1, model.getTasksAssignedTo(userId).size());
+
+    model.cleanUp();
+    executor.shutdown();
+  }
+
+  @Test
+  // Tests that task changes show up locally before the server answers
+  public void optimisticWritesTest() throws InterruptedException {
+    ModelInterface model = new ModelInterface(mFirestore);
+    model.setOptimisticWrites(true);
+    final String userId = "optimisticWritesTest_userId";
+    final CallbackCounter counter = new CallbackCounter();
+    final boolean[] listenerReady = new boolean[] {false};
+    // Id of a task waiting to be put back after a failed write
+    final String[] restoring = new String[1];
+
+    basicSetup(model, counter, userId);
+
+    counter.increment();
+    model.setTasksListener(
+        tasks -> {
+          if (!listenerReady[0]) {
+            listenerReady[0] = true;
+            counter.decrement();
+          } else if (restoring[0] != null && model.getTaskById(restoring[0]) != null) {
+            restoring[0] = null;
+            counter.decrement();
+          }
+        });
+    counter.block();
+
+    // Added tasks are visible as soon as addTask returns
+    TaskModel newTask = new TaskModel();
+    newTask.setName("Name");
+    newTask.setPriority(1);
+    counter.increment();
+    model.addTask(newTask, task -> counter.decrement());
+    assertEquals(1, model.getTasks().size());
+    final String taskId = model.getTasks().get(0).getTaskId();
+    assertEquals("Name", model.getTaskById(taskId).getName());
+    counter.block();
+
+    // So are updates
+    TaskModel updated = new TaskModel(model.getTaskById(taskId));
+    updated.setName("New name");
+    counter.increment();
+    model.updateTask(updated, task -> counter.decrement());
+    assertEquals("New name", model.getTaskById(taskId).getName());
+    counter.block();
+
+    counter.increment();
+    model.setTaskCompleted(taskId, true, id -> counter.decrement());
+    assertTrue(model.getTaskById(taskId).isCompleted());
+    counter.block();
+
+    // A removal that fails puts the task back
+    restoring[0] = taskId;
+    model.failNextTaskRemoval(
+        new FirebaseFirestoreException("test", FirebaseFirestoreException.Code.UNAVAILABLE));
+    counter.increment(2);
+    model.removeTask(
+        model.getTaskById(taskId),
+        task -> {
+          assertNull(task);
+          counter.decrement();
+        });
+    counter.block();
+    assertTrue(model.getTaskById(taskId).isCompleted());
+
+    // And removals
+    counter.increment();
+    model.removeTask(model.getTaskById(taskId), task -> counter.decrement());
+    assertNull(model.getTaskById(taskId));
+    counter.block();
+    assertNull(model.getTaskById(taskId));
+
+    model.cleanUp();
+  }
+
+  @Test
+  // Tests that the echo of a local write does not call the listener again
+  public void suppressedEventsTest() throws InterruptedException {
+    ModelInterface model = new ModelInterface(mFirestore);
+    model.setOptimisticWrites(true);
+    final String userId = "suppressedEventsTest_userId";
+    final CallbackCounter counter = new CallbackCounter();
+    final List<ChangeSet<TaskModel>> events = new ArrayList<>();
+
+    basicSetup(model, counter, userId);
+
+    counter.increment();
+    model.setTaskChangesListener(
+        changes -> {
+          assertNotNull(changes);
+          events.add(changes);
+          if (events.size() == 1) {
+            counter.decrement();
+          }
+        });
+    counter.block();
+    int suppressed = model.getSuppressedEvents();
+
+    // Shown once by the local change, the snapshot of the pending write changes nothing
+    TaskModel newTask = new TaskModel();
+    newTask.setName("Name");
+    counter.increment();
+    model.addTask(newTask, task -> counter.decrement());
+    counter.block();
+    assertEquals(2, events.size());
+    assertEquals(1, events.get(1).getAdded().size());
+    assertTrue(model.getSuppressedEvents() > suppressed);
+
+    // The completion date is set by the server, the pending write reads without one and is still
+    // recognised as the local change
+    suppressed = model.getSuppressedEvents();
+    String taskId = events.get(1).getAdded().get(0).getTaskId();
+    counter.increment();
+    model.setTaskCompleted(taskId, true, id -> counter.decrement());
+    counter.block();
+    assertEquals(1, events.get(2).getModified().size());
+    assertTrue(events.get(2).getModified().get(0).isCompleted());
+    assertTrue(model.getSuppressedEvents() > suppressed);
+
+    model.removeTasksListener();
+    model.cleanUp();
+  }
+
   @Test
   // Tests basic user operations
   public void userTest() throws InterruptedException {
@@ -458,6 +996,106 @@ public class ModelInterfaceTest {
     model.cleanUp();
   }
 
+  @Test
+  // Tests that lookups are answered by the cache when they can be
+  public void cacheLookupTest() throws InterruptedException {
+    ModelInterface model = new ModelInterface(mFirestore);
+    final String userId = "cacheLookupTest_userId";
+    final CallbackCounter counter = new CallbackCounter();
+
+    basicSetup(model, counter, userId);
+
+    // The listener keeps the tasks in the cache
+    counter.increment();
+    model.setTasksListener(tasks -> counter.decrement());
+    counter.block();
+
+    TaskModel newTask = new TaskModel();
+    newTask.setName("Name");
+    final String[] newTaskId = new String[1];
+    counter.increment(2);
+    model.addTask(
+        newTask,
+        task -> {
+          newTaskId[0] = task.getTaskId();
+          counter.decrement();
+        });
+    counter.block();
+
+    int hits = model.getCacheHits();
+    counter.increment();
+    model.fetchTask(
+        newTaskId[0],
+        Source.CACHE,
+        task -> {
+          assertNotNull(task);
+          assertEquals("Name", task.getName());
+          counter.decrement();
+        });
+    counter.block();
+    assertEquals(hits + 1, model.getCacheHits());
+
+    // Missing tasks are checked with the server
+    int misses = model.getCacheMisses();
+    counter.increment();
+    model.fetchTask(
+        "missing",
+        Source.CACHE,
+        task -> {
+          assertNull(task);
+          counter.decrement();
+        });
+    counter.block();
+    assertEquals(misses + 1, model.getCacheMisses());
+
+    model.cleanUp();
+  }
+
+  @Test
+  // Tests that a returning user is found through the user directory
+  public void userDirectoryTest() throws InterruptedException {
+    ModelInterface model = new ModelInterface(mFirestore);
+    final String userId = "userDirectoryTest_userId";
+    final CallbackCounter counter = new CallbackCounter();
+
+    basicSetup(model, counter, userId);
+    final String householdId = model.getHousehold().getHouseholdId();
+
+    // A new session finds the household the user is in
+    ModelInterface returning = new ModelInterface(mFirestore);
+    counter.increment();
+    returning.setCurrentUser(
+        userId,
+        user -> {
+          assertNotNull(user);
+          assertEquals(userId, user.getFirebaseId());
+          counter.decrement();
+        });
+    counter.block();
+    assertNotNull(returning.getHousehold());
+    assertEquals(householdId, returning.getHousehold().getHouseholdId());
+
+    // And knows when the user has left it
+    counter.increment();
+    model.removeUserFromHousehold(user -> counter.decrement());
+    counter.block();
+
+    ModelInterface unassigned = new ModelInterface(mFirestore);
+    counter.increment();
+    unassigned.setCurrentUser(
+        userId,
+        user -> {
+          assertNotNull(user);
+          counter.decrement();
+        });
+    counter.block();
+    assertNull(unassigned.getHousehold());
+
+    model.cleanUp();
+    returning.cleanUp();
+    unassigned.cleanUp();
+  }
+
   private void basicSetup(ModelInterface model, CallbackCounter counter, String userId)
       throws InterruptedException {
     // Add user
@@ -488,7 +1126,8 @@ public class ModelInterfaceTest {
 
 // Simple class to keep track of callbacks and block until they finish
 class CallbackCounter {
-  private int count;
+  // Listeners may call back on a background thread
+  private volatile int count;
 
   public int getCount() {
     return count;
@@ -509,7 +1148,7 @@ class CallbackCounter {
     increment(1);
   }
 
-  public void increment(int amount) {
+  public synchronized void increment(int amount) {
     count += amount;
   }
 
@@ -517,7 +1156,7 @@ class CallbackCounter {
     decrement(1);
   }
 
-  public void decrement(int amount) {
+  public synchronized void decrement(int amount) {
     if (count >= amount) {
       count -= amount;
     } else {
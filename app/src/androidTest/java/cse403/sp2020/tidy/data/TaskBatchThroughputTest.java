@@ -0,0 +1,172 @@
+package cse403.sp2020.tidy.data;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreSettings;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import cse403.sp2020.tidy.data.model.HouseholdModel;
+import cse403.sp2020.tidy.data.model.TaskModel;
+
+/*
+ * Measures how many tasks per second the bulk task operations write, and checks that a missing
+ * task only fails itself. Needs the Firestore emulator, results are written to logcat under
+ * TaskBatchThroughput.
+ */
+
+public class TaskBatchThroughputTest {
+  private static final String TAG = "TaskBatchThroughput";
+  private static final int[] SIZES = new int[] {1000, 5000};
+
+  private FirebaseFirestore mFirestore;
+
+  @Before
+  public void setUp() throws Exception {
+    // 10.0.2.2 is the special IP address to connect to the 'localhost' of
+    // the host computer from an Android emulator.
+    FirebaseFirestoreSettings settings =
+        new FirebaseFirestoreSettings.Builder()
+            .setHost("10.0.2.2:8080")
+            .setSslEnabled(false)
+            .setPersistenceEnabled(false)
+            .build();
+
+    mFirestore = FirebaseFirestore.getInstance();
+    mFirestore.setFirestoreSettings(settings);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    mFirestore.terminate();
+  }
+
+  @Test
+  public void bulkTaskThroughput() throws InterruptedException {
+    ModelInterface model = new ModelInterface(mFirestore);
+    final CallbackCounter counter = new CallbackCounter();
+
+    counter.increment();
+    model.setCurrentUser("bulkTaskThroughput_userId", user -> counter.decrement());
+    counter.block();
+    counter.increment();
+    model.createHousehold(new HouseholdModel(), household -> counter.decrement());
+    counter.block();
+    assertNotNull(model.getHousehold());
+
+    for (int size : SIZES) {
+      List<TaskModel> tasks = new ArrayList<>();
+      for (int i = 0; i < size; i++) {
+        TaskModel newTask = new TaskModel();
+        newTask.setName("Task " + i);
+        newTask.setPriority(i % 10);
+        tasks.add(newTask);
+      }
+
+      final List<List<TaskModel>> results = new ArrayList<>();
+      long start = SystemClock.elapsedRealtimeNanos();
+      counter.increment();
+      model.addTasks(
+          tasks,
+          added -> {
+            results.add(added);
+            counter.decrement();
+          });
+      counter.block();
+      log(size, "add", start);
+      assertAllWritten(size, results.get(0));
+
+      List<TaskModel> updates = new ArrayList<>();
+      for (TaskModel task : results.get(0)) {
+        TaskModel updated = new TaskModel(task);
+        updated.setCompleted(true);
+        updates.add(updated);
+      }
+      start = SystemClock.elapsedRealtimeNanos();
+      counter.increment();
+      model.updateTasks(
+          updates,
+          updated -> {
+            results.add(updated);
+            counter.decrement();
+          });
+      counter.block();
+      log(size, "update", start);
+      assertAllWritten(size, results.get(1));
+
+      start = SystemClock.elapsedRealtimeNanos();
+      counter.increment();
+      model.removeTasks(
+          results.get(1),
+          removed -> {
+            results.add(removed);
+            counter.decrement();
+          });
+      counter.block();
+      log(size, "remove", start);
+      assertAllWritten(size, results.get(2));
+    }
+
+    // A missing task fails alone, the rest of its batch is still written
+    TaskModel first = new TaskModel();
+    first.setName("First");
+    TaskModel second = new TaskModel();
+    second.setName("Second");
+    List<TaskModel> added = new ArrayList<>();
+    List<TaskModel> pair = new ArrayList<>();
+    pair.add(first);
+    pair.add(second);
+    counter.increment();
+    model.addTasks(
+        pair,
+        tasks -> {
+          added.addAll(tasks);
+          counter.decrement();
+        });
+    counter.block();
+
+    TaskModel missing = new TaskModel();
+    missing.setTaskId("missing");
+    List<TaskModel> mixed = new ArrayList<>();
+    mixed.add(added.get(0));
+    mixed.add(missing);
+    mixed.add(null);
+    mixed.add(added.get(1));
+    counter.increment();
+    model.removeTasks(
+        mixed,
+        removed -> {
+          assertEquals(4, removed.size());
+          assertNotNull(removed.get(0));
+          assertNull(removed.get(1));
+          assertNull(removed.get(2));
+          assertNotNull(removed.get(3));
+          counter.decrement();
+        });
+    counter.block();
+
+    model.cleanUp();
+  }
+
+  private static void assertAllWritten(int size, List<TaskModel> results) {
+    assertNotNull(results);
+    assertEquals(size, results.size());
+    for (TaskModel task : results) {
+      assertNotNull(task);
+    }
+  }
+
+  private static void log(int size, String operation, long startNanos) {
+    double seconds = (SystemClock.elapsedRealtimeNanos() - startNanos) / 1e9;
+    Log.i(TAG, size + " tasks " + operation + ": " + (int) (size / seconds) + " tasks/s");
+  }
+}
@@ -0,0 +1,139 @@
+package cse403.sp2020.tidy.data;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreSettings;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import cse403.sp2020.tidy.data.model.HouseholdModel;
+import cse403.sp2020.tidy.data.model.TaskModel;
+
+/*
+ * Moves a task window through a large household and checks that it only ever holds a few pages.
+ * Needs the Firestore emulator, memory use is written to logcat under TaskWindow.
+ */
+
+public class TaskWindowTest {
+  private static final String TAG = "TaskWindow";
+  private static final int TASK_COUNT = 10000;
+  private static final int PAGE_SIZE = 50;
+  private static final int MAX_PAGES = 4;
+  private static final long WAIT_MILLIS = 10000;
+
+  private FirebaseFirestore mFirestore;
+
+  // Latest tasks sent by the window
+  private volatile List<TaskModel> mTasks;
+
+  @Before
+  public void setUp() throws Exception {
+    // 10.0.2.2 is the special IP address to connect to the 'localhost' of
+    // the host computer from an Android emulator.
+    FirebaseFirestoreSettings settings =
+        new FirebaseFirestoreSettings.Builder()
+            .setHost("10.0.2.2:8080")
+            .setSslEnabled(false)
+            .setPersistenceEnabled(false)
+            .build();
+
+    mFirestore = FirebaseFirestore.getInstance();
+    mFirestore.setFirestoreSettings(settings);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    mFirestore.terminate();
+  }
+
+  @Test
+  public void windowStaysBounded() throws InterruptedException {
+    ModelInterface model = new ModelInterface(mFirestore);
+    final CallbackCounter counter = new CallbackCounter();
+
+    counter.increment();
+    model.setCurrentUser("windowStaysBounded_userId", user -> counter.decrement());
+    counter.block();
+    counter.increment();
+    model.createHousehold(new HouseholdModel(), household -> counter.decrement());
+    counter.block();
+    assertNotNull(model.getHousehold());
+
+    List<TaskModel> tasks = new ArrayList<>();
+    for (int i = 0; i < TASK_COUNT; i++) {
+      TaskModel newTask = new TaskModel();
+      newTask.setName("Task " + i);
+      newTask.setPriority(i);
+      tasks.add(newTask);
+    }
+    counter.increment();
+    model.addTasks(tasks, added -> counter.decrement());
+    counter.block();
+
+    TaskWindow window = model.openTaskWindow(PAGE_SIZE, MAX_PAGES, loaded -> mTasks = loaded);
+    assertNotNull(window);
+    waitForFirstPriority(0, PAGE_SIZE);
+    long startMemory = usedMemory();
+
+    // Scroll to the end, only the last few pages stay loaded
+    int pages = TASK_COUNT / PAGE_SIZE;
+    for (int page = 1; page < pages; page++) {
+      window.extendForward();
+      int first = Math.max(0, page - MAX_PAGES + 1) * PAGE_SIZE;
+      waitForFirstPriority(first, Math.min(page + 1, MAX_PAGES) * PAGE_SIZE);
+      assertTrue(window.size() <= MAX_PAGES * PAGE_SIZE);
+    }
+    Log.i(TAG, "Memory after " + pages + " pages: " + (usedMemory() - startMemory) + " bytes");
+
+    // And back to the start
+    for (int page = pages - MAX_PAGES - 1; page >= 0; page--) {
+      window.extendBackward();
+      waitForFirstPriority(page * PAGE_SIZE, MAX_PAGES * PAGE_SIZE);
+    }
+
+    // A task moved past the loaded pages stays where it was until the server places it
+    model.setOptimisticWrites(true);
+    TaskModel moved = new TaskModel(mTasks.get(0));
+    moved.setPriority(TASK_COUNT);
+    int size = window.size();
+    counter.increment();
+    model.updateTask(moved, task -> counter.decrement());
+    assertEquals(size, window.size());
+    assertEquals(TASK_COUNT, window.get(moved.getTaskId()).getPriority());
+    counter.block();
+
+    window.close();
+    model.cleanUp();
+  }
+
+  // Waits until the window starts at a priority and holds a number of tasks
+  private void waitForFirstPriority(int priority, int size) throws InterruptedException {
+    long deadline = SystemClock.elapsedRealtime() + WAIT_MILLIS;
+    while (SystemClock.elapsedRealtime() < deadline) {
+      List<TaskModel> tasks = mTasks;
+      if (tasks != null
+          && tasks.size() == size
+          && tasks.get(0).getPriority() == priority
+          && tasks.get(size - 1).getPriority() == priority + size - 1) {
+        return;
+      }
+      Thread.sleep(20);
+    }
+    fail("Window did not reach priority " + priority + " with " + size + " tasks");
+  }
+
+  private static long usedMemory() {
+    Runtime runtime = Runtime.getRuntime();
+    runtime.gc();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
@@ -0,0 +1,155 @@
+package cse403.sp2020.tidy.data;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreSettings;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import cse403.sp2020.tidy.data.model.HouseholdModel;
+import cse403.sp2020.tidy.data.model.TaskModel;
+
+/*
+ * Compares task update and remove latency with and without the read before the write.
+ * Needs the Firestore emulator, results are written to logcat under TaskWriteLatency.
+ */
+
+public class TaskWriteLatencyTest {
+  private static final String TAG = "TaskWriteLatency";
+  private static final int OPERATIONS = 25;
+
+  private FirebaseFirestore mFirestore;
+
+  @Before
+  public void setUp() throws Exception {
+    // 10.0.2.2 is the special IP address to connect to the 'localhost' of
+    // the host computer from an Android emulator.
+    FirebaseFirestoreSettings settings =
+        new FirebaseFirestoreSettings.Builder()
+            .setHost("10.0.2.2:8080")
+            .setSslEnabled(false)
+            .setPersistenceEnabled(false)
+            .build();
+
+    mFirestore = FirebaseFirestore.getInstance();
+    mFirestore.setFirestoreSettings(settings);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    mFirestore.terminate();
+  }
+
+  @Test
+  public void taskWriteLatency() throws InterruptedException {
+    ModelInterface model = new ModelInterface(mFirestore);
+    final CallbackCounter counter = new CallbackCounter();
+
+    counter.increment();
+    model.setCurrentUser("taskWriteLatency_userId", user -> counter.decrement());
+    counter.block();
+    counter.increment();
+    model.createHousehold(new HouseholdModel(), household -> counter.decrement());
+    counter.block();
+    assertNotNull(model.getHousehold());
+
+    // Keep tasks mirrored, like the app does
+    counter.increment();
+    model.setTasksListener(tasks -> counter.decrement());
+    counter.block();
+
+    for (boolean readFirst : new boolean[] {true, false}) {
+      model.setReadBeforeTaskWrites(readFirst);
+      String path = readFirst ? "read then write" : "single write";
+
+      List<TaskModel> tasks = new ArrayList<>();
+      for (int i = 0; i < OPERATIONS; i++) {
+        TaskModel newTask = new TaskModel();
+        newTask.setName("Task " + i);
+        counter.increment();
+        model.addTask(
+            newTask,
+            task -> {
+              assertNotNull(task);
+              tasks.add(task);
+              counter.decrement();
+            });
+        counter.block();
+      }
+      // Let the listener catch up so removals find the tasks mirrored
+      Thread.sleep(500);
+
+      List<Long> updates = new ArrayList<>();
+      for (TaskModel task : tasks) {
+        TaskModel updated = new TaskModel(task);
+        updated.setCompleted(true);
+        final long start = SystemClock.elapsedRealtimeNanos();
+        counter.increment();
+        model.updateTask(
+            updated,
+            t -> {
+              assertNotNull(t);
+              updates.add(SystemClock.elapsedRealtimeNanos() - start);
+              counter.decrement();
+            });
+        counter.block();
+      }
+
+      List<Long> removals = new ArrayList<>();
+      for (TaskModel task : tasks) {
+        final long start = SystemClock.elapsedRealtimeNanos();
+        counter.increment();
+        model.removeTask(
+            task,
+            t -> {
+              assertNotNull(t);
+              removals.add(SystemClock.elapsedRealtimeNanos() - start);
+              counter.decrement();
+            });
+        counter.block();
+      }
+
+      Log.i(TAG, path + ": update median " + median(updates) + " ms");
+      Log.i(TAG, path + ": remove median " + median(removals) + " ms");
+    }
+
+    // Both paths still refuse missing tasks
+    TaskModel missing = new TaskModel();
+    missing.setTaskId("missing");
+    for (boolean readFirst : new boolean[] {true, false}) {
+      model.setReadBeforeTaskWrites(readFirst);
+      counter.increment(2);
+      model.updateTask(
+          missing,
+          t -> {
+            assertNull(t);
+            counter.decrement();
+          });
+      model.removeTask(
+          missing,
+          t -> {
+            assertNull(t);
+            counter.decrement();
+          });
+      counter.block();
+    }
+
+    model.cleanUp();
+  }
+
+  private static double median(List<Long> nanos) {
+    List<Long> sorted = new ArrayList<>(nanos);
+    Collections.sort(sorted);
+    return sorted.get(sorted.size() / 2) / 1e6;
+  }
+}
@@ -0,0 +1,183 @@
+package cse403.sp2020.tidy.data.codec;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreSettings;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import cse403.sp2020.tidy.data.model.TaskModel;
+import cse403.sp2020.tidy.data.model.UserModel;
+
+/*
+ * Compares reflection (toObject) with the hand-written codecs on the same snapshots.
+ * Needs the Firestore emulator, results are written to logcat under CodecBenchmark.
+ */
+
+public class CodecBenchmarkTest {
+  private static final String TAG = "CodecBenchmark";
+  private static final int BATCH_SIZE = 500;
+  private static final int RUNS = 5;
+
+  private FirebaseFirestore mFirestore;
+
+  @Before
+  public void setUp() throws Exception {
+    // 10.0.2.2 is the special IP address to connect to the 'localhost' of
+    // the host computer from an Android emulator.
+    FirebaseFirestoreSettings settings =
+        new FirebaseFirestoreSettings.Builder()
+            .setHost("10.0.2.2:8080")
+            .setSslEnabled(false)
+            .setPersistenceEnabled(false)
+            .build();
+
+    mFirestore = FirebaseFirestore.getInstance();
+    mFirestore.setFirestoreSettings(settings);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    mFirestore.terminate();
+  }
+
+  @Test
+  public void taskCodecBenchmark() throws Exception {
+    for (int size : new int[] {1000, 10000}) {
+      CollectionReference tasks = mFirestore.collection("CodecBenchmark_tasks_" + size);
+      List<Object> data = new ArrayList<>();
+      for (int i = 0; i < size; i++) {
+        TaskModel task = new TaskModel();
+        task.setTaskId("task" + i);
+        task.setName("Task " + i);
+        task.setDescription("Description of task " + i);
+        task.setPriority(i % 10);
+        task.setAssignedTo("user" + (i % 4));
+        task.setCompleted(i % 3 == 0);
+        task.setAssignedDate(new Timestamp(1590000000L + i, 0));
+        data.add(TaskCodec.toMap(task));
+      }
+      List<DocumentSnapshot> documents = seed(tasks, data);
+
+      // Both paths have to agree before their speed matters
+      for (DocumentSnapshot document : documents) {
+        TaskModel reflected = document.toObject(TaskModel.class);
+        TaskModel decoded = TaskCodec.fromDocument(document);
+        assertEquals(reflected.getTaskId(), decoded.getTaskId());
+        assertEquals(reflected.getName(), decoded.getName());
+        assertEquals(reflected.getDescription(), decoded.getDescription());
+        assertEquals(reflected.getPriority(), decoded.getPriority());
+        assertEquals(reflected.getAssignedTo(), decoded.getAssignedTo());
+        assertEquals(reflected.isCompleted(), decoded.isCompleted());
+        assertEquals(reflected.getAssignedDate(), decoded.getAssignedDate());
+        assertEquals(reflected.getCompletedDate(), decoded.getCompletedDate());
+      }
+
+      long reflection = time(documents, d -> d.toObject(TaskModel.class));
+      long codec = time(documents, TaskCodec::fromDocument);
+      report("tasks", size, reflection, codec);
+      clear(documents);
+    }
+  }
+
+  @Test
+  public void userCodecBenchmark() throws Exception {
+    for (int size : new int[] {1000, 10000}) {
+      CollectionReference users = mFirestore.collection("CodecBenchmark_users_" + size);
+      List<Object> data = new ArrayList<>();
+      for (int i = 0; i < size; i++) {
+        UserModel user = new UserModel();
+        user.setFirebaseId("user" + i);
+        user.setFirstName("First" + i);
+        user.setLastName("Last" + i);
+        user.setPreferences(Arrays.asList("task" + i, "task" + (i + 1), "task" + (i + 2)));
+        data.add(UserCodec.toMap(user));
+      }
+      List<DocumentSnapshot> documents = seed(users, data);
+
+      for (DocumentSnapshot document : documents) {
+        UserModel reflected = document.toObject(UserModel.class);
+        UserModel decoded = UserCodec.fromDocument(document);
+        assertEquals(reflected.getFirebaseId(), decoded.getFirebaseId());
+        assertEquals(reflected.getFirstName(), decoded.getFirstName());
+        assertEquals(reflected.getLastName(), decoded.getLastName());
+        assertEquals(reflected.getPreferences(), decoded.getPreferences());
+      }
+
+      long reflection = time(documents, d -> d.toObject(UserModel.class));
+      long codec = time(documents, UserCodec::fromDocument);
+      report("users", size, reflection, codec);
+      clear(documents);
+    }
+  }
+
+  // Writes the documents in batches and reads them back as one snapshot
+  private List<DocumentSnapshot> seed(CollectionReference collection, List<Object> data)
+      throws Exception {
+    WriteBatch batch = mFirestore.batch();
+    for (int i = 0; i < data.size(); i++) {
+      batch.set(collection.document("doc" + i), data.get(i));
+      if ((i + 1) % BATCH_SIZE == 0 || i == data.size() - 1) {
+        Tasks.await(batch.commit());
+        batch = mFirestore.batch();
+      }
+    }
+    List<DocumentSnapshot> documents = Tasks.await(collection.get()).getDocuments();
+    assertEquals(data.size(), documents.size());
+    return documents;
+  }
+
+  private void clear(List<DocumentSnapshot> documents) throws Exception {
+    WriteBatch batch = mFirestore.batch();
+    for (int i = 0; i < documents.size(); i++) {
+      batch.delete(documents.get(i).getReference());
+      if ((i + 1) % BATCH_SIZE == 0 || i == documents.size() - 1) {
+        Tasks.await(batch.commit());
+        batch = mFirestore.batch();
+      }
+    }
+  }
+
+  // Best time in nanoseconds to decode every document, after one warm up run
+  private long time(List<DocumentSnapshot> documents, Decoder decoder) {
+    long best = Long.MAX_VALUE;
+    for (int run = 0; run <= RUNS; run++) {
+      long start = SystemClock.elapsedRealtimeNanos();
+      for (DocumentSnapshot document : documents) {
+        assertNotNull(decoder.decode(document));
+      }
+      long elapsed = SystemClock.elapsedRealtimeNanos() - start;
+      if (run > 0) {
+        best = Math.min(best, elapsed);
+      }
+    }
+    return best;
+  }
+
+  private void report(String name, int size, long reflection, long codec) {
+    Log.i(
+        TAG,
+        String.format(
+            "%s, %d documents: reflection %.2f ms, codec %.2f ms (%.1fx)",
+            name, size, reflection / 1e6, codec / 1e6, (double) reflection / codec));
+  }
+
+  private interface Decoder {
+    Object decode(DocumentSnapshot document);
+  }
+}
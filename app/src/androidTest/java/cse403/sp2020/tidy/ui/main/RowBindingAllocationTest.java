@@ -0,0 +1,150 @@
+package cse403.sp2020.tidy.ui.main;
+
+import android.content.Context;
+import android.os.Debug;
+import android.view.ContextThemeWrapper;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import cse403.sp2020.tidy.R;
+import cse403.sp2020.tidy.data.model.TaskModel;
+import cse403.sp2020.tidy.data.model.UserModel;
+
+/**
+ * Scrolls a chore list up and down and checks that binding its rows doesn't allocate once the
+ * assignee names are built. Only the bind is measured, laying out the rows is left out.
+ */
+@RunWith(AndroidJUnit4.class)
+public class RowBindingAllocationTest {
+  private static final int NUM_TASKS = 400;
+  private static final int NUM_USERS = 5;
+  private static final int WIDTH = 1080;
+  private static final int HEIGHT = 1920;
+  private static final int SCROLL_PIXELS = 150;
+  private static final int NUM_SCROLLS = 200;
+
+  private List<UserModel> users;
+  private List<TaskModel> tasks;
+
+  // Only counted while measuring, touched on the main thread
+  private boolean measuring;
+  private int binds;
+  private int allocations;
+
+  @Before
+  public void setUp() {
+    users = new ArrayList<>();
+    for (int i = 0; i < NUM_USERS; i++) {
+      UserModel user = new UserModel();
+      user.setFirebaseId("user" + i);
+      user.setFirstName("First" + i);
+      user.setLastName("Last" + i);
+      users.add(user);
+    }
+
+    tasks = new ArrayList<>();
+    for (int i = 0; i < NUM_TASKS; i++) {
+      TaskModel task = new TaskModel();
+      task.setTaskId("task" + i);
+      task.setName("Task " + i);
+      task.setDescription("Description " + i);
+      // Some are assigned to users that haven't loaded
+      task.setAssignedTo("user" + (i % (NUM_USERS + 2)));
+      // Changing the checkbox state allocates in the framework, so every row has the same one
+      task.setCompleted(false);
+      tasks.add(task);
+    }
+  }
+
+  @Test
+  public void labelsMatchAssignee() {
+    AssigneeLabels labels = new AssigneeLabels("user0");
+    labels.setUsers(users);
+    assertEquals(AssigneeLabels.MINE, labels.label("user0"));
+    assertTrue(labels.isMine("user0"));
+    assertEquals("First1 Last1" + '\u00A0', labels.label("user1"));
+    assertFalse(labels.isMine("user1"));
+    assertEquals(AssigneeLabels.UNKNOWN, labels.label("user6"));
+    assertEquals(AssigneeLabels.UNKNOWN, labels.label(null));
+
+    // Built again when the users change
+    labels.setUsers(null);
+    assertEquals(AssigneeLabels.UNKNOWN, labels.label("user1"));
+    assertEquals(AssigneeLabels.MINE, labels.label("user0"));
+  }
+
+  @Test
+  public void rebindingRowsDoesNotAllocate() {
+    InstrumentationRegistry.getInstrumentation().runOnMainSync(this::scrollList);
+
+    assertTrue(binds > 0);
+    assertEquals("Objects allocated in " + binds + " binds", 0, allocations);
+  }
+
+  // Runs on the main thread
+  private void scrollList() {
+    Context context =
+        new ContextThemeWrapper(
+            InstrumentationRegistry.getInstrumentation().getTargetContext(), R.style.AppTheme);
+    // Every chore can be checked off, so the checkboxes stay enabled
+    ChoreListAdapter adapter =
+        new ChoreListAdapter(null, "user0", true) {
+          @Override
+          public void onBindViewHolder(
+              @NonNull ChoreHolder holder, int position, @NonNull List<Object> payloads) {
+            int start = Debug.getThreadAllocCount();
+            super.onBindViewHolder(holder, position, payloads);
+            int allocated = Debug.getThreadAllocCount() - start;
+            if (measuring) {
+              binds++;
+              allocations += allocated;
+            }
+          }
+        };
+    adapter.setUsers(users);
+    adapter.submitList(tasks);
+
+    RecyclerView list = new RecyclerView(context);
+    list.setLayoutManager(new LinearLayoutManager(context));
+    list.setAdapter(adapter);
+    list.measure(
+        View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+        View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+    list.layout(0, 0, WIDTH, HEIGHT);
+
+    Debug.startAllocCounting();
+    try {
+      // Once through first, so the recycled views and the text buffers of the rows are built
+      scroll(list);
+      measuring = true;
+      scroll(list);
+      measuring = false;
+    } finally {
+      Debug.stopAllocCounting();
+    }
+  }
+
+  // Scrolls down and back up, binding the rows that come into view
+  private static void scroll(RecyclerView list) {
+    for (int i = 0; i < NUM_SCROLLS; i++) {
+      list.scrollBy(0, SCROLL_PIXELS);
+    }
+    for (int i = 0; i < NUM_SCROLLS; i++) {
+      list.scrollBy(0, -SCROLL_PIXELS);
+    }
+  }
+}
@@ -0,0 +1,98 @@
+package cse403.sp2020.tidy.data;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+
+/**
+ * Runs callback-shaped operations as {@link Task}s, so callers can start several and combine them
+ * with {@link com.google.android.gms.tasks.Tasks}. A call with the same key as one still running
+ * gets the running task instead of starting the operation again. Calls that take longer than their
+ * timeout fail with a {@link TimeoutException}, and a later result is dropped.
+ *
+ * <p>Null results are failures, like everywhere else callbacks are used.
+ */
+class AsyncCalls {
+  // Log info
+  private static final String TAG = "AsyncCalls";
+
+  /** Starts an operation that calls back once, with null on failure */
+  interface Operation<T> {
+    void run(CallbackInterface<T> callback);
+  }
+
+  private final Map<String, Task<?>> mInFlight;
+  private final Handler mHandler;
+  private int mSharedCalls;
+
+  AsyncCalls() {
+    mInFlight = new HashMap<>();
+    mHandler = new Handler(Looper.getMainLooper());
+    mSharedCalls = 0;
+  }
+
+  /**
+   * @param key Identifies calls that can share a result, such as the method name and arguments.
+   * @param timeoutMillis How long to wait for the result, 0 to wait as long as it takes.
+   * @param operation Operation to start if there is no running call with the key.
+   * @param <T> Result type
+   * @return a task completed with the result of the operation.
+   */
+  @SuppressWarnings("unchecked")
+  synchronized <T> Task<T> call(
+      final String key, final long timeoutMillis, final Operation<T> operation) {
+    Task<T> running = (Task<T>) mInFlight.get(key);
+    if (running != null) {
+      mSharedCalls++;
+      Log.d(TAG, "Sharing call in flight: " + key);
+      return running;
+    }
+
+    final TaskCompletionSource<T> source = new TaskCompletionSource<>();
+    final Task<T> task = source.getTask();
+    mInFlight.put(key, task);
+
+    final Runnable timeout =
+        () -> {
+          if (source.trySetException(
+              new TimeoutException(key + " took longer than " + timeoutMillis + " ms"))) {
+            Log.w(TAG, "Call timed out: " + key);
+            finish(key, task);
+          }
+        };
+    if (timeoutMillis > 0) {
+      mHandler.postDelayed(timeout, timeoutMillis);
+    }
+
+    operation.run(
+        result -> {
+          mHandler.removeCallbacks(timeout);
+          if (result == null) {
+            source.trySetException(new Exception(key + " failed"));
+          } else {
+            source.trySetResult(result);
+          }
+          finish(key, task);
+        });
+    return task;
+  }
+
+  /** @return how many calls were given a running task instead of starting their own */
+  synchronized int getSharedCalls() {
+    return mSharedCalls;
+  }
+
+  private synchronized void finish(String key, Task<?> task) {
+    // A newer call may have taken the key after this one timed out
+    if (mInFlight.get(key) == task) {
+      mInFlight.remove(key);
+    }
+  }
+}
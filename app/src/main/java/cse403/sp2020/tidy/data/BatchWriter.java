@@ -0,0 +1,152 @@
+package cse403.sp2020.tidy.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import android.util.Log;
+
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.WriteBatch;
+
+/**
+ * Writes many items with as few round trips as possible. Items are packed into {@link WriteBatch}es
+ * that stay under the operation limit of a batch, and a few batches are committed at a time. A
+ * batch succeeds or fails as a whole, so every item learns the result of the batch it was in.
+ *
+ * <p>Used once per bulk operation, from the main thread.
+ */
+class BatchWriter {
+  // Log info
+  private static final String TAG = "BatchWriter";
+
+  /** Adds the writes of one item to a batch */
+  interface Operation {
+    void addTo(WriteBatch batch);
+  }
+
+  /** Receives the outcome of every item, in the order they were added */
+  interface Listener {
+    /** @param failures Error of the batch each item was in, null for items that were written. */
+    void onComplete(List<Exception> failures);
+  }
+
+  // One batch worth of items, and where they start in the item list
+  private static class Chunk {
+    private final int mFirstItem;
+    private final List<Operation> mOperations = new ArrayList<>();
+    private int mOperationCount;
+
+    private Chunk(int firstItem) {
+      mFirstItem = firstItem;
+      mOperationCount = 0;
+    }
+  }
+
+  private final FirebaseFirestore mFirestore;
+  private final int mMaxOperations;
+  private final int mMaxInFlight;
+  private final List<Chunk> mChunks;
+  private int mItemCount;
+
+  // Commit progress
+  private Exception[] mFailures;
+  private Listener mListener;
+  private int mNextChunk;
+  private int mFinishedChunks;
+
+  /**
+   * @param firestore Database to write to.
+   * @param maxOperations Most operations put in one batch.
+   * @param maxInFlight Most batches waiting to be committed at once.
+   */
+  BatchWriter(FirebaseFirestore firestore, int maxOperations, int maxInFlight) {
+    mFirestore = firestore;
+    mMaxOperations = maxOperations;
+    mMaxInFlight = Math.max(1, maxInFlight);
+    mChunks = new ArrayList<>();
+    mItemCount = 0;
+  }
+
+  /**
+   * Adds an item. The writes of one item always go in the same batch.
+   *
+   * @param operationCount How many writes the item adds to a batch.
+   * @param operation Adds the writes to a batch.
+   */
+  void add(int operationCount, Operation operation) {
+    Chunk chunk = mChunks.isEmpty() ? null : mChunks.get(mChunks.size() - 1);
+    if (chunk == null || chunk.mOperationCount + operationCount > mMaxOperations) {
+      chunk = new Chunk(mItemCount);
+      mChunks.add(chunk);
+    }
+    chunk.mOperations.add(operation);
+    chunk.mOperationCount += operationCount;
+    mItemCount++;
+  }
+
+  /** @return how many batches the added items are split into */
+  int getBatchCount() {
+    return mChunks.size();
+  }
+
+  /**
+   * Commits every batch and calls back once all of them are done.
+   *
+   * @param listener Called on the main thread with the outcome of each item.
+   */
+  void commit(Listener listener) {
+    mListener = listener;
+    mFailures = new Exception[mItemCount];
+    mNextChunk = 0;
+    mFinishedChunks = 0;
+
+    if (mChunks.isEmpty()) {
+      finish();
+      return;
+    }
+
+    Log.d(TAG, "Committing " + mItemCount + " items in " + mChunks.size() + " batches");
+    while (mNextChunk < mChunks.size() && mNextChunk < mMaxInFlight) {
+      commitNext();
+    }
+  }
+
+  private void commitNext() {
+    final Chunk chunk = mChunks.get(mNextChunk++);
+    WriteBatch batch = mFirestore.batch();
+    for (Operation operation : chunk.mOperations) {
+      operation.addTo(batch);
+    }
+
+    batch
+        .commit()
+        .addOnCompleteListener(
+            task -> {
+              if (!task.isSuccessful()) {
+                Log.w(TAG, "Failed to commit batch: " + task.getException());
+                Exception failure = task.getException();
+                if (failure == null) {
+                  // Cancelled, still has to count as a failure
+                  failure = new Exception("Batch was not committed");
+                }
+                Arrays.fill(
+                    mFailures,
+                    chunk.mFirstItem,
+                    chunk.mFirstItem + chunk.mOperations.size(),
+                    failure);
+              }
+
+              mFinishedChunks++;
+              if (mNextChunk < mChunks.size()) {
+                commitNext();
+              } else if (mFinishedChunks == mChunks.size()) {
+                finish();
+              }
+            });
+  }
+
+  private void finish() {
+    mListener.onComplete(Arrays.asList(mFailures));
+  }
+}
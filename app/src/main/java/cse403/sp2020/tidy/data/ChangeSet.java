@@ -0,0 +1,60 @@
+package cse403.sp2020.tidy.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The result of applying one snapshot event to a local mirror of a collection. Holds the objects
+ * that were added, modified and removed by the event along with the full view after the event.
+ *
+ * @param <T> Model type held by the collection
+ */
+public class ChangeSet<T> {
+  private final List<T> mAdded;
+  private final List<T> mModified;
+  private final List<T> mRemoved;
+  private final SnapshotList<T> mAll;
+
+  ChangeSet(List<T> added, List<T> modified, List<T> removed, SnapshotList<T> all) {
+    mAdded = Collections.unmodifiableList(added);
+    mModified = Collections.unmodifiableList(modified);
+    mRemoved = Collections.unmodifiableList(removed);
+    mAll = all;
+  }
+
+  /** Builds a change set that reports everything in the view as added */
+  static <T> ChangeSet<T> ofAll(SnapshotList<T> all) {
+    return new ChangeSet<>(new ArrayList<>(all), new ArrayList<>(), new ArrayList<>(), all);
+  }
+
+  /** @return objects that were not in the mirror before this event */
+  public List<T> getAdded() {
+    return mAdded;
+  }
+
+  /** @return objects whose document changed in this event, in their new state */
+  public List<T> getModified() {
+    return mModified;
+  }
+
+  /** @return objects that were dropped from the mirror, in their last known state */
+  public List<T> getRemoved() {
+    return mRemoved;
+  }
+
+  /** @return the full read-only view of the collection after this event */
+  public SnapshotList<T> getAll() {
+    return mAll;
+  }
+
+  /** @return true if the event did not change anything */
+  public boolean isEmpty() {
+    return mAdded.isEmpty() && mModified.isEmpty() && mRemoved.isEmpty();
+  }
+
+  /** @return number of objects touched by this event */
+  public int size() {
+    return mAdded.size() + mModified.size() + mRemoved.size();
+  }
+}
@@ -0,0 +1,412 @@
+package cse403.sp2020.tidy.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.QuerySnapshot;
+
+/**
+ * Local id-keyed copy of a Firestore collection that is kept up to date from the document changes
+ * of each snapshot. Only added and modified documents are deserialized, so the work done per event
+ * depends on the size of the change instead of the size of the collection. Readers get a shared
+ * {@link SnapshotList} that is only rebuilt when the contents change.
+ *
+ * <p>The mirror can also keep its objects in order. Changes delivered by the listener carry their
+ * old and new positions in the query results, which are used to place them directly when the query
+ * has the same order. Anything else is placed by binary search, so a change never re-sorts the
+ * whole collection.
+ *
+ * <p>A hash of the fields of every document as last seen is kept, so a document that is reported
+ * again with the same contents is not parsed or reported as modified. Neither is an empty snapshot
+ * from the cache while resyncing, or the echo of a write whose result was already put in the mirror
+ * as long as it encodes to the same fields as the object that was put. Server timestamps read as
+ * null until the server sets them, so they match any timestamp the object has in their place.
+ *
+ * <p>All methods lock the mirror, so snapshots can be applied on a background thread while the main
+ * thread reads. Callers can also lock the mirror to keep their own state in step with it.
+ *
+ * @param <T> Model type the documents are converted to
+ */
+class DocumentMirror<T> {
+  /** Converts a document into a model object */
+  interface Parser<T> {
+    T parse(DocumentSnapshot document);
+  }
+
+  /** Converts a model object into the fields of its document */
+  interface Encoder<T> {
+    Map<String, Object> encode(T object);
+  }
+
+  private final Parser<T> mParser;
+  private final Encoder<T> mEncoder;
+  private final Map<String, T> mDocuments;
+
+  // Hashes of the fields of the documents as last seen in a snapshot
+  private final Map<String, Long> mHashes;
+
+  // Documents put in the mirror ahead of the server, their contents are out of date
+  private final Set<String> mLocal;
+
+  // Objects in order, null when the mirror is unordered
+  private Comparator<T> mOrder;
+  private List<T> mOrdered;
+
+  // Bumped on every change, cached snapshot is dropped at the same time
+  private long mVersion;
+  private SnapshotList<T> mSnapshot;
+
+  // Set when a new listener is attached, the next snapshot replaces the contents
+  private boolean mResync;
+
+  DocumentMirror(Parser<T> parser) {
+    this(parser, null);
+  }
+
+  /**
+   * @param parser Converts documents into model objects.
+   * @param encoder Converts model objects back into fields, used to recognise the echo of an object
+   *     that was put in the mirror. Null to always apply echoes.
+   */
+  DocumentMirror(Parser<T> parser, Encoder<T> encoder) {
+    mParser = parser;
+    mEncoder = encoder;
+    mDocuments = new LinkedHashMap<>();
+    mHashes = new HashMap<>();
+    mLocal = new HashSet<>();
+    mOrder = null;
+    mOrdered = null;
+    mResync = false;
+    mVersion = 0;
+    mSnapshot = null;
+  }
+
+  /**
+   * Keeps the objects in order from now on, or goes back to the order they were first seen in.
+   *
+   * @param order Total order of the objects, should match the order of the mirrored query so its
+   *     positions can be used. Null for an unordered mirror.
+   */
+  synchronized void setOrder(Comparator<T> order) {
+    mOrder = order;
+    if (order == null) {
+      mOrdered = null;
+    } else {
+      mOrdered = new ArrayList<>(mDocuments.values());
+      Collections.sort(mOrdered, order);
+    }
+    invalidate();
+  }
+
+  /**
+   * Applies the document changes of a snapshot to the mirror.
+   *
+   * @param snapshot Snapshot delivered by a listener on the mirrored query.
+   * @return the changes that were applied along with the new full view.
+   */
+  synchronized ChangeSet<T> apply(QuerySnapshot snapshot) {
+    List<T> added = new ArrayList<>();
+    List<T> modified = new ArrayList<>();
+    List<T> removed = new ArrayList<>();
+
+    // The first snapshot of a new listener lists everything as added, so anything that is not in
+    // it went away while no listener was attached. An empty one from the cache is more likely a
+    // cache that has not seen the collection yet, so the server's answer is waited on.
+    Set<String> stale = null;
+    if (mResync
+        && snapshot.isEmpty()
+        && snapshot.getMetadata().isFromCache()
+        && !mDocuments.isEmpty()) {
+      return new ChangeSet<>(added, modified, removed, snapshot());
+    }
+    if (mResync) {
+      stale = new HashSet<>(mDocuments.keySet());
+      mResync = false;
+    }
+
+    for (DocumentChange change : snapshot.getDocumentChanges()) {
+      String id = change.getDocument().getId();
+      switch (change.getType()) {
+        case ADDED:
+        case MODIFIED:
+          DocumentSnapshot document = change.getDocument();
+          if (stale != null) {
+            stale.remove(id);
+          }
+          long hash = hash(document.getData());
+          Long known = mHashes.put(id, hash);
+          T object = null;
+          if (mLocal.contains(id)) {
+            if (document.getMetadata().hasPendingWrites() && mEncoder != null) {
+              // Our own write, skipped only if nothing else was merged into it. The object that
+              // was put stays, the next change of the document is compared with this one.
+              object = mParser.parse(document);
+              if (sameFields(mEncoder.encode(object), mEncoder.encode(mDocuments.get(id)))) {
+                mLocal.remove(id);
+                break;
+              }
+            }
+          } else if (known != null && known == hash && mDocuments.containsKey(id)) {
+            break;
+          }
+          mLocal.remove(id);
+
+          if (object == null) {
+            object = mParser.parse(document);
+          }
+          T previous = mDocuments.put(id, object);
+          if (mOrdered != null) {
+            if (previous != null) {
+              removeOrdered(previous, change.getOldIndex());
+            }
+            addOrdered(object, change.getNewIndex());
+          }
+          if (previous == null) {
+            added.add(object);
+          } else {
+            modified.add(object);
+          }
+          break;
+        case REMOVED:
+          mHashes.remove(id);
+          mLocal.remove(id);
+          T old = mDocuments.remove(id);
+          if (old != null) {
+            removeOrdered(old, change.getOldIndex());
+            removed.add(old);
+          }
+          break;
+      }
+    }
+
+    if (stale != null) {
+      for (String id : stale) {
+        mHashes.remove(id);
+        mLocal.remove(id);
+        T old = mDocuments.remove(id);
+        removeOrdered(old, -1);
+        removed.add(old);
+      }
+    }
+
+    if (!added.isEmpty() || !modified.isEmpty() || !removed.isEmpty()) {
+      invalidate();
+    }
+    return new ChangeSet<>(added, modified, removed, snapshot());
+  }
+
+  /**
+   * Puts an object in the mirror ahead of the server, for example to show a local change before it
+   * is written.
+   *
+   * @param id Document id of the object.
+   * @param object New value, null removes the object.
+   * @return the change that was made, empty if there was nothing to change.
+   */
+  synchronized ChangeSet<T> put(String id, T object) {
+    Map<String, T> objects = new HashMap<>();
+    objects.put(id, object);
+    return putAll(objects);
+  }
+
+  /**
+   * Puts several objects in the mirror at once, so they show up as a single change.
+   *
+   * @param objects New values by document id, null values remove the object.
+   * @return the changes that were made, empty if there was nothing to change.
+   */
+  synchronized ChangeSet<T> putAll(Map<String, T> objects) {
+    List<T> added = new ArrayList<>();
+    List<T> modified = new ArrayList<>();
+    List<T> removed = new ArrayList<>();
+
+    for (Map.Entry<String, T> entry : objects.entrySet()) {
+      if (entry.getValue() == null) {
+        mHashes.remove(entry.getKey());
+        mLocal.remove(entry.getKey());
+        T old = mDocuments.remove(entry.getKey());
+        if (old != null) {
+          removeOrdered(old, -1);
+          removed.add(old);
+        }
+      } else {
+        T previous = mDocuments.put(entry.getKey(), entry.getValue());
+        mLocal.add(entry.getKey());
+        if (previous != entry.getValue() && mOrdered != null) {
+          if (previous != null) {
+            removeOrdered(previous, -1);
+          }
+          addOrdered(entry.getValue(), -1);
+        }
+        if (previous == null) {
+          added.add(entry.getValue());
+        } else if (previous != entry.getValue()) {
+          modified.add(entry.getValue());
+        }
+      }
+    }
+
+    if (!added.isEmpty() || !modified.isEmpty() || !removed.isEmpty()) {
+      invalidate();
+    }
+    return new ChangeSet<>(added, modified, removed, snapshot());
+  }
+
+  /** Marks the contents as out of date, the next applied snapshot replaces them */
+  synchronized void resync() {
+    mResync = true;
+  }
+
+  /** Drops all mirrored documents */
+  synchronized void clear() {
+    mDocuments.clear();
+    mHashes.clear();
+    mLocal.clear();
+    if (mOrdered != null) {
+      mOrdered.clear();
+    }
+    mResync = false;
+    invalidate();
+  }
+
+  /** @return the mirrored object with the given document id, or null if there isn't one */
+  synchronized T get(String id) {
+    return mDocuments.get(id);
+  }
+
+  /** @return a read-only list of every mirrored object, shared until the next change */
+  synchronized SnapshotList<T> snapshot() {
+    if (mSnapshot == null) {
+      mSnapshot = new SnapshotList<>(mOrdered != null ? mOrdered : mDocuments.values(), mVersion);
+    }
+    return mSnapshot;
+  }
+
+  synchronized long getVersion() {
+    return mVersion;
+  }
+
+  synchronized int size() {
+    return mDocuments.size();
+  }
+
+  // Inserts an object in order, at the hinted position if it belongs there
+  private void addOrdered(T object, int hint) {
+    int size = mOrdered.size();
+    if (hint < 0
+        || hint > size
+        || (hint > 0 && mOrder.compare(mOrdered.get(hint - 1), object) > 0)
+        || (hint < size && mOrder.compare(object, mOrdered.get(hint)) > 0)) {
+      int found = Collections.binarySearch(mOrdered, object, mOrder);
+      hint = found < 0 ? -found - 1 : found;
+    }
+    mOrdered.add(hint, object);
+  }
+
+  // Removes an object from the order, looking at the hinted position first
+  private void removeOrdered(T object, int hint) {
+    if (mOrdered == null) {
+      return;
+    }
+    if (hint < 0 || hint >= mOrdered.size() || mOrdered.get(hint) != object) {
+      hint = Collections.binarySearch(mOrdered, object, mOrder);
+      if (hint < 0 || mOrdered.get(hint) != object) {
+        // Order of the object changed without the mirror knowing, fall back to a scan
+        hint = -1;
+        for (int i = 0; i < mOrdered.size(); i++) {
+          if (mOrdered.get(i) == object) {
+            hint = i;
+            break;
+          }
+        }
+      }
+    }
+    if (hint >= 0) {
+      mOrdered.remove(hint);
+    }
+  }
+
+  // Whether the fields of a pending write match the ones of the object that was put. Server
+  // timestamps that are not set yet read as null and match any timestamp.
+  private static boolean sameFields(Map<String, Object> pending, Map<String, Object> put) {
+    if (pending.size() != put.size()) {
+      return false;
+    }
+    for (Map.Entry<String, Object> entry : put.entrySet()) {
+      Object value = pending.get(entry.getKey());
+      if (value == null && entry.getValue() instanceof Timestamp) {
+        continue;
+      }
+      if (!pending.containsKey(entry.getKey()) || !Objects.equals(value, entry.getValue())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // 64-bit hash of a field value. Entries of maps are mixed on their own and summed, so the order
+  // a map lists them in doesn't matter.
+  static long hash(Object value) {
+    if (value == null) {
+      return 0;
+    }
+    if (value instanceof Map) {
+      long hash = 1;
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        hash += mix(hash(entry.getKey()) * 31 + hash(entry.getValue()));
+      }
+      return hash;
+    }
+    if (value instanceof List) {
+      long hash = 2;
+      for (Object item : (List<?>) value) {
+        hash = mix(hash * 31 + hash(item));
+      }
+      return hash;
+    }
+    if (value instanceof String) {
+      // FNV-1a
+      String string = (String) value;
+      long hash = 0xcbf29ce484222325L;
+      for (int i = 0; i < string.length(); i++) {
+        hash ^= string.charAt(i);
+        hash *= 0x100000001b3L;
+      }
+      return hash;
+    }
+    if (value instanceof Double || value instanceof Float) {
+      return mix(Double.doubleToLongBits(((Number) value).doubleValue()));
+    }
+    if (value instanceof Number) {
+      return mix(((Number) value).longValue());
+    }
+    if (value instanceof Timestamp) {
+      Timestamp timestamp = (Timestamp) value;
+      return mix(timestamp.getSeconds() * 1000000000L + timestamp.getNanoseconds());
+    }
+    return mix(value.hashCode());
+  }
+
+  // Spreads the bits of a value over the whole hash, the finalizer of SplitMix64
+  private static long mix(long value) {
+    value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+    value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+    return value ^ (value >>> 31);
+  }
+
+  private void invalidate() {
+    mVersion++;
+    mSnapshot = null;
+  }
+}
@@ -0,0 +1,839 @@
+package cse403.sp2020.tidy.data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.Choreographer;
+
+import androidx.lifecycle.LiveData;
+
+import com.google.android.gms.tasks.Task;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.ListenerRegistration;
+import cse403.sp2020.tidy.data.model.HouseholdModel;
+import cse403.sp2020.tidy.data.model.TaskModel;
+import cse403.sp2020.tidy.data.model.UserModel;
+
+/**
+ * HouseholdRepository is the process-wide owner of a single {@link ModelInterface} and its
+ * Firestore listeners, so every screen shares one live cache of the household.
+ *
+ * <p>Functional Details:
+ *
+ * <p>- The current user is resolved once and reused by later screens asking for the same user.
+ *
+ * <p>- Household, task, my task and user listeners are reference counted. A listener is opened for
+ * the first subscriber and closed a grace period after the last subscriber removes its
+ * registration, so a screen being recreated or briefly left does not download everything again.
+ *
+ * <p>- Subscribers joining an open listener are called right away with the latest data.
+ *
+ * <p>- The same data is available as {@link LiveData} streams, which only listen while an observer
+ * is started and hand it just the latest value when it starts again. {@link HouseholdState}
+ * combines the household, the user's tasks and the users, and is emitted at most once a frame.
+ *
+ * <p>- Snapshots are parsed on a background thread. Subscribers can pass a transform that also runs
+ * there, so sorting and filtering stay off the main thread. Callbacks run on the main thread.
+ *
+ * <p>- All methods are expected to be called from the main thread.
+ */
+public class HouseholdRepository {
+  // Log info
+  private static final String TAG = "HouseholdRepository";
+
+  /** How long a listener stays open after its last subscriber leaves, in milliseconds */
+  public static final long LISTENER_GRACE_MILLIS = 5000;
+
+  private static HouseholdRepository sInstance;
+
+  private final ModelInterface mModel;
+  private final Handler mMainHandler;
+
+  // Shared listeners
+  private final Channel<HouseholdModel> mHouseholdChannel;
+  private final Channel<ChangeSet<TaskModel>> mTasksChannel;
+  private final Channel<ChangeSet<TaskModel>> mMyTasksChannel;
+  private final Channel<ChangeSet<UserModel>> mUsersChannel;
+
+  // Callbacks waiting on a user lookup that is already in flight, keyed by firebase id
+  private final Map<String, List<CallbackInterface<UserModel>>> mPendingUsers;
+
+  // Runs the *Async methods
+  private final AsyncCalls mAsyncCalls;
+
+  // Set on the main thread, read when a channel loses its last subscriber
+  private long mGraceMillis;
+
+  // Built the first time they are asked for, and again after a reset so no stream holds the
+  // previous account's data
+  private LiveData<HouseholdModel> mHouseholdStream;
+  private LiveData<List<TaskModel>> mTasksStream;
+  private LiveData<List<TaskModel>> mMyTasksStream;
+  private LiveData<List<UserModel>> mUsersStream;
+  private LiveData<HouseholdState> mStateStream;
+
+  // Bumped whenever listeners move to another household, parts of a state must share it
+  private int mHouseholdGeneration;
+
+  /** @return the repository for this process, built on the default Firestore instance */
+  public static synchronized HouseholdRepository getInstance() {
+    if (sInstance == null) {
+      ModelInterface model = new ModelInterface(FirebaseFirestore.getInstance());
+      // One thread, so updates are processed in the order they arrive
+      model.setSnapshotExecutor(Executors.newSingleThreadExecutor());
+      // Screens show task changes right away instead of waiting on the server
+      model.setOptimisticWrites(true);
+      // Login sends its reads together and starts loading the household early
+      model.setParallelLookups(true);
+      // Task lists arrive sorted by priority, so screens do not sort every update
+      model.setOrderedTasks(true);
+      sInstance = new HouseholdRepository(model);
+    }
+    return sInstance;
+  }
+
+  // Takes the model to share
+  HouseholdRepository(ModelInterface model) {
+    Log.d(TAG, "Building HouseholdRepository");
+    mModel = model;
+    mMainHandler = new Handler(Looper.getMainLooper());
+    mPendingUsers = new HashMap<>();
+    mAsyncCalls = new AsyncCalls();
+    mGraceMillis = LISTENER_GRACE_MILLIS;
+
+    mHouseholdChannel =
+        new Channel<HouseholdModel>("household") {
+          @Override
+          void open(CallbackInterface<HouseholdModel> sink) {
+            mModel.setHouseholdListener(sink);
+          }
+
+          @Override
+          void close() {
+            mModel.removeHouseholdListener();
+          }
+        };
+
+    mTasksChannel =
+        new Channel<ChangeSet<TaskModel>>("tasks") {
+          @Override
+          void open(CallbackInterface<ChangeSet<TaskModel>> sink) {
+            mModel.setTaskChangesListener(sink);
+          }
+
+          @Override
+          void close() {
+            mModel.removeTasksListener();
+          }
+
+          @Override
+          ChangeSet<TaskModel> replay(ChangeSet<TaskModel> latest) {
+            return ChangeSet.ofAll(latest.getAll());
+          }
+        };
+
+    mMyTasksChannel =
+        new Channel<ChangeSet<TaskModel>>("my tasks") {
+          @Override
+          void open(CallbackInterface<ChangeSet<TaskModel>> sink) {
+            mModel.setMyTaskChangesListener(sink);
+          }
+
+          @Override
+          void close() {
+            mModel.removeMyTasksListener();
+          }
+
+          @Override
+          ChangeSet<TaskModel> replay(ChangeSet<TaskModel> latest) {
+            return ChangeSet.ofAll(latest.getAll());
+          }
+        };
+
+    mUsersChannel =
+        new Channel<ChangeSet<UserModel>>("users") {
+          @Override
+          void open(CallbackInterface<ChangeSet<UserModel>> sink) {
+            mModel.setUserChangesListener(sink);
+          }
+
+          @Override
+          void close() {
+            mModel.removeUsersListener();
+          }
+
+          @Override
+          ChangeSet<UserModel> replay(ChangeSet<UserModel> latest) {
+            return ChangeSet.ofAll(latest.getAll());
+          }
+        };
+  }
+
+  /** @return the shared model, use it for reads and single operations */
+  public ModelInterface getModel() {
+    return mModel;
+  }
+
+  /**
+   * Sets how long a listener is kept open after its last subscriber leaves. A subscriber joining in
+   * that time gets the latest data right away instead of waiting on a new listener.
+   *
+   * @param millis Grace period, 0 to close listeners as soon as nobody is subscribed.
+   */
+  public void setListenerGracePeriod(long millis) {
+    mGraceMillis = Math.max(0, millis);
+  }
+
+  /** @return how long a listener is kept open after its last subscriber leaves */
+  public long getListenerGracePeriod() {
+    return mGraceMillis;
+  }
+
+  /* User and household changes */
+
+  /**
+   * Sets the current user of the shared model. Returns right away if this user is already set, and
+   * joins the lookup if one is already in flight for the same id. Open listeners are reattached to
+   * the new user's household.
+   *
+   * @param firebaseId Firebase Id string of the currently authenticated user.
+   * @param callback Interface that accepts a {@link UserModel}, null on failure.
+   */
+  public void setCurrentUser(final String firebaseId, final CallbackInterface<UserModel> callback) {
+    if (callback == null) {
+      Log.w(TAG, "Callback is null -- setCurrentUser");
+      return;
+    }
+
+    UserModel current = mModel.getCurrentUser();
+    if (current != null && firebaseId != null && firebaseId.equals(current.getFirebaseId())) {
+      Log.d(TAG, "User already set, reusing it");
+      callback.callback(current);
+      return;
+    }
+
+    List<CallbackInterface<UserModel>> pending = mPendingUsers.get(firebaseId);
+    if (pending != null) {
+      Log.d(TAG, "User lookup already in flight, waiting on it");
+      pending.add(callback);
+      return;
+    }
+
+    pending = new ArrayList<>();
+    pending.add(callback);
+    mPendingUsers.put(firebaseId, pending);
+    mModel.setCurrentUser(
+        firebaseId,
+        user -> {
+          List<CallbackInterface<UserModel>> callbacks = mPendingUsers.remove(firebaseId);
+          if (user != null) {
+            // Setting a user drops the model's listeners
+            reopenListeners();
+          }
+          if (callbacks != null) {
+            for (CallbackInterface<UserModel> c : callbacks) {
+              c.callback(user);
+            }
+          }
+        });
+  }
+
+  /**
+   * Same as {@link #setCurrentUser(String, CallbackInterface)}, but returns a {@link Task} that
+   * fails after the model's async timeout, see {@link ModelInterface#setAsyncTimeout(long)}.
+   *
+   * @param firebaseId Firebase Id string of the currently authenticated user.
+   * @return a task with the current user, failed on failure or timeout.
+   */
+  public Task<UserModel> setCurrentUserAsync(final String firebaseId) {
+    return mAsyncCalls.call(
+        "setCurrentUser " + firebaseId,
+        mModel.getAsyncTimeout(),
+        callback -> setCurrentUser(firebaseId, callback));
+  }
+
+  /**
+   * Same as {@link ModelInterface#setCurrentHousehold(String, CallbackInterface)}, then reattaches
+   * open listeners to the new household.
+   */
+  public void setCurrentHousehold(
+      String householdId, final CallbackInterface<HouseholdModel> callback) {
+    mModel.setCurrentHousehold(householdId, household -> onHouseholdChanged(household, callback));
+  }
+
+  /**
+   * Same as {@link ModelInterface#createHousehold(HouseholdModel, CallbackInterface)}, then
+   * reattaches open listeners to the new household.
+   */
+  public void createHousehold(
+      final HouseholdModel household, final CallbackInterface<HouseholdModel> callback) {
+    mModel.createHousehold(household, created -> onHouseholdChanged(created, callback));
+  }
+
+  /**
+   * Same as {@link ModelInterface#removeUserFromHousehold(CallbackInterface)}. Open listeners are
+   * told there is no household anymore.
+   */
+  public void removeUserFromHousehold(final CallbackInterface<UserModel> callback) {
+    mModel.removeUserFromHousehold(
+        user -> {
+          if (user != null) {
+            reopenListeners();
+          }
+          callback.callback(user);
+        });
+  }
+
+  /**
+   * Closes every listener and drops all cached data, for example when signing out. Streams handed
+   * out before get no more values, streams asked for afterwards start empty.
+   */
+  public void reset() {
+    Log.d(TAG, "Resetting repository");
+    mHouseholdGeneration++;
+    mHouseholdChannel.reset();
+    mTasksChannel.reset();
+    mMyTasksChannel.reset();
+    mUsersChannel.reset();
+    mHouseholdStream = null;
+    mTasksStream = null;
+    mMyTasksStream = null;
+    mUsersStream = null;
+    mStateStream = null;
+    mModel.cleanUp();
+  }
+
+  /* Shared listeners */
+
+  /**
+   * Subscribes to the current household. Opens the Firestore listener if this is the first
+   * subscriber. Requires the current user to exist AND be in household.
+   *
+   * @param callback Interface that accepts a {@link HouseholdModel}, null on failure.
+   * @return registration to remove once updates are no longer needed.
+   */
+  public ListenerRegistration addHouseholdListener(
+      final CallbackInterface<HouseholdModel> callback) {
+    return mHouseholdChannel.subscribe(null, callback);
+  }
+
+  /**
+   * Subscribes to changes of the Tasks collection. Opens the Firestore listener if this is the
+   * first subscriber. Requires the current user to exist AND be in household.
+   *
+   * @param callback Interface that accepts a {@link ChangeSet} of {@link TaskModel}s, null on
+   *     failure.
+   * @return registration to remove once updates are no longer needed.
+   */
+  public ListenerRegistration addTaskChangesListener(
+      final CallbackInterface<ChangeSet<TaskModel>> callback) {
+    return mTasksChannel.subscribe(null, callback);
+  }
+
+  /**
+   * Same as {@link #addTaskChangesListener(CallbackInterface)}, but only hands over the full list.
+   */
+  public ListenerRegistration addTasksListener(final CallbackInterface<List<TaskModel>> callback) {
+    return addTasksListener(tasks -> tasks, callback);
+  }
+
+  /**
+   * Same as {@link #addTasksListener(CallbackInterface)}, but the list is first turned into what
+   * the subscriber shows. The transform runs off the main thread and only its result is handed to
+   * the callback.
+   *
+   * @param transform Interface that turns the full read-only task list into a result, never called
+   *     with null.
+   * @param callback Interface that accepts the result, null on failure.
+   * @param <V> Result type
+   * @return registration to remove once updates are no longer needed.
+   */
+  public <V> ListenerRegistration addTasksListener(
+      final TransformInterface<List<TaskModel>, V> transform, final CallbackInterface<V> callback) {
+    return mTasksChannel.subscribe(changes -> transform.transform(changes.getAll()), callback);
+  }
+
+  /**
+   * Subscribes to the tasks assigned to the current user, filtered by the query so other tasks are
+   * never downloaded. Opens the Firestore listener if this is the first subscriber. Independent of
+   * the listener on all tasks. Requires the current user to exist AND be in household.
+   *
+   * @param callback Interface that accepts a {@link ChangeSet} of {@link TaskModel}s, null on
+   *     failure.
+   * @return registration to remove once updates are no longer needed.
+   */
+  public ListenerRegistration addMyTaskChangesListener(
+      final CallbackInterface<ChangeSet<TaskModel>> callback) {
+    return mMyTasksChannel.subscribe(null, callback);
+  }
+
+  /**
+   * Same as {@link #addMyTaskChangesListener(CallbackInterface)}, but only hands over the full
+   * list.
+   */
+  public ListenerRegistration addMyTasksListener(
+      final CallbackInterface<List<TaskModel>> callback) {
+    return addMyTasksListener(tasks -> tasks, callback);
+  }
+
+  /**
+   * Same as {@link #addMyTaskChangesListener(CallbackInterface)}, but the list of the user's tasks
+   * is first turned into what the subscriber shows, off the main thread.
+   *
+   * @param transform Interface that turns the read-only list of the user's tasks into a result,
+   *     never called with null.
+   * @param callback Interface that accepts the result, null on failure.
+   * @param <V> Result type
+   * @return registration to remove once updates are no longer needed.
+   */
+  public <V> ListenerRegistration addMyTasksListener(
+      final TransformInterface<List<TaskModel>, V> transform, final CallbackInterface<V> callback) {
+    return mMyTasksChannel.subscribe(changes -> transform.transform(changes.getAll()), callback);
+  }
+
+  /**
+   * Subscribes to changes of the Users collection. Opens the Firestore listener if this is the
+   * first subscriber. Requires the current user to exist AND be in household.
+   *
+   * @param callback Interface that accepts a {@link ChangeSet} of {@link UserModel}s, null on
+   *     failure.
+   * @return registration to remove once updates are no longer needed.
+   */
+  public ListenerRegistration addUserChangesListener(
+      final CallbackInterface<ChangeSet<UserModel>> callback) {
+    return mUsersChannel.subscribe(null, callback);
+  }
+
+  /**
+   * Same as {@link #addUserChangesListener(CallbackInterface)}, but only hands over the full list.
+   */
+  public ListenerRegistration addUsersListener(final CallbackInterface<List<UserModel>> callback) {
+    return mUsersChannel.subscribe(ChangeSet::getAll, callback);
+  }
+
+  /* Streams */
+
+  /**
+   * The current household as a stream that only listens while it has a started observer. Values
+   * set while no observer was started are conflated, observers only see the latest one. Requires
+   * the current user to exist AND be in household.
+   *
+   * @return stream of the {@link HouseholdModel}, null on failure.
+   */
+  public LiveData<HouseholdModel> getHouseholdStream() {
+    if (mHouseholdStream == null) {
+      mHouseholdStream =
+          new ChannelLiveData<HouseholdModel, HouseholdModel>(mHouseholdChannel, null);
+    }
+    return mHouseholdStream;
+  }
+
+  /**
+   * Same as {@link #getHouseholdStream()}, for the read-only list of all tasks.
+   *
+   * @return stream of the {@link TaskModel}s, null on failure.
+   */
+  public LiveData<List<TaskModel>> getTasksStream() {
+    if (mTasksStream == null) {
+      mTasksStream = new ChannelLiveData<>(mTasksChannel, ChangeSet::getAll);
+    }
+    return mTasksStream;
+  }
+
+  /**
+   * Same as {@link #getHouseholdStream()}, for the read-only list of the current user's tasks.
+   *
+   * @return stream of the {@link TaskModel}s, null on failure.
+   */
+  public LiveData<List<TaskModel>> getMyTasksStream() {
+    if (mMyTasksStream == null) {
+      mMyTasksStream = new ChannelLiveData<>(mMyTasksChannel, ChangeSet::getAll);
+    }
+    return mMyTasksStream;
+  }
+
+  /**
+   * Same as {@link #getHouseholdStream()}, for the read-only list of users in the household.
+   *
+   * @return stream of the {@link UserModel}s, null on failure.
+   */
+  public LiveData<List<UserModel>> getUsersStream() {
+    if (mUsersStream == null) {
+      mUsersStream = new ChannelLiveData<>(mUsersChannel, ChangeSet::getAll);
+    }
+    return mUsersStream;
+  }
+
+  /**
+   * The household, the current user's tasks and the users combined into one stream, so a screen
+   * renders them together instead of once per part. Nothing is emitted until every part has
+   * loaded, and changes arriving in the same frame are emitted once. Requires the current user to
+   * exist AND be in household.
+   *
+   * @return stream of the {@link HouseholdState}, null on failure.
+   */
+  public LiveData<HouseholdState> getHouseholdStateStream() {
+    if (mStateStream == null) {
+      mStateStream = new StateLiveData();
+    }
+    return mStateStream;
+  }
+
+  /* Helper methods */
+
+  private void onHouseholdChanged(
+      HouseholdModel household, CallbackInterface<HouseholdModel> callback) {
+    if (household != null) {
+      reopenListeners();
+    }
+    if (callback != null) {
+      callback.callback(household);
+    }
+  }
+
+  // The model dropped its listeners, attach them again for anyone still subscribed
+  private void reopenListeners() {
+    mHouseholdGeneration++;
+    mHouseholdChannel.reopen();
+    mTasksChannel.reopen();
+    mMyTasksChannel.reopen();
+    mUsersChannel.reopen();
+  }
+
+  // Runs on the snapshot executor, or right away if snapshots are processed on the main thread
+  private void runInBackground(Runnable runnable) {
+    Executor executor = mModel.getSnapshotExecutor();
+    if (executor != null) {
+      executor.execute(runnable);
+    } else {
+      runnable.run();
+    }
+  }
+
+  private void runOnMainThread(Runnable runnable) {
+    if (Looper.myLooper() == Looper.getMainLooper()) {
+      runnable.run();
+    } else {
+      mMainHandler.post(runnable);
+    }
+  }
+
+  /**
+   * One model listener shared by any number of subscribers. Values arrive on the snapshot thread,
+   * where each subscriber's transform is run before the result is posted to the main thread.
+   *
+   * @param <T> Data type delivered by the model
+   */
+  private abstract class Channel<T> {
+    private final String mName;
+    private final List<Subscriber<T, ?>> mSubscribers;
+    private volatile T mLatest;
+    private volatile boolean mHasLatest;
+
+    // Whether the model listener is attached, it stays attached through the grace period
+    private boolean mOpen;
+    private final Runnable mCloseLater;
+
+    // Bumped whenever the model listener is replaced, values from an older one are dropped
+    private volatile int mEpoch;
+
+    Channel(String name) {
+      mName = name;
+      mSubscribers = new CopyOnWriteArrayList<>();
+      mLatest = null;
+      mHasLatest = false;
+      mOpen = false;
+      mEpoch = 0;
+      mCloseLater =
+          () -> {
+            if (mOpen && mSubscribers.isEmpty()) {
+              Log.d(TAG, "Grace period over, closing " + mName + " listener");
+              closeListener();
+            }
+          };
+    }
+
+    // Attaches the model listener, which must pass its values to sink
+    abstract void open(CallbackInterface<T> sink);
+
+    // Detaches the model listener
+    abstract void close();
+
+    // What a late subscriber receives, defaults to the latest value
+    T replay(T latest) {
+      return latest;
+    }
+
+    <V> ListenerRegistration subscribe(
+        final TransformInterface<T, V> transform, final CallbackInterface<V> callback) {
+      if (callback == null) {
+        Log.w(TAG, "Callback is null -- subscribe " + mName);
+        return () -> {};
+      }
+
+      final Subscriber<T, V> subscriber = new Subscriber<>(transform, callback);
+      mSubscribers.add(subscriber);
+      mMainHandler.removeCallbacks(mCloseLater);
+      if (!mOpen) {
+        Log.d(TAG, "First subscriber, opening " + mName + " listener");
+        openListener();
+      } else if (mHasLatest) {
+        final int epoch = mEpoch;
+        // Read the latest value on the snapshot thread, in case a newer one is already queued
+        runInBackground(
+            () -> {
+              if (epoch == mEpoch && mHasLatest) {
+                T latest = mLatest;
+                deliver(subscriber, epoch, latest == null ? null : replay(latest));
+              }
+            });
+      }
+      return () -> unsubscribe(subscriber);
+    }
+
+    void reopen() {
+      if (!mSubscribers.isEmpty()) {
+        openListener();
+      } else if (mOpen) {
+        // Only kept for the grace period, nobody needs the new household's data yet
+        mMainHandler.removeCallbacks(mCloseLater);
+        closeListener();
+      }
+    }
+
+    void reset() {
+      for (Subscriber<T, ?> subscriber : mSubscribers) {
+        subscriber.mActive = false;
+      }
+      mSubscribers.clear();
+      mMainHandler.removeCallbacks(mCloseLater);
+      closeListener();
+    }
+
+    private void openListener() {
+      clearLatest();
+      mOpen = true;
+      final int epoch = mEpoch;
+      open(value -> dispatch(epoch, value));
+    }
+
+    private void closeListener() {
+      close();
+      mOpen = false;
+      clearLatest();
+    }
+
+    // Called on the snapshot thread
+    private void dispatch(int epoch, T value) {
+      if (epoch != mEpoch) {
+        return;
+      }
+      mLatest = value;
+      mHasLatest = true;
+      for (Subscriber<T, ?> subscriber : mSubscribers) {
+        deliver(subscriber, epoch, value);
+      }
+    }
+
+    private <V> void deliver(final Subscriber<T, V> subscriber, final int epoch, T value) {
+      final V result;
+      if (value == null || subscriber.mTransform == null) {
+        @SuppressWarnings("unchecked")
+        V unchanged = (V) value;
+        result = unchanged;
+      } else {
+        result = subscriber.mTransform.transform(value);
+      }
+      runOnMainThread(
+          () -> {
+            // Skip subscribers that left, or a listener that was replaced, in the meantime
+            if (subscriber.mActive && epoch == mEpoch) {
+              subscriber.mCallback.callback(result);
+            }
+          });
+    }
+
+    private void clearLatest() {
+      mEpoch++;
+      mLatest = null;
+      mHasLatest = false;
+    }
+
+    private void unsubscribe(Subscriber<T, ?> subscriber) {
+      subscriber.mActive = false;
+      if (mSubscribers.remove(subscriber) && mSubscribers.isEmpty()) {
+        if (mGraceMillis > 0) {
+          Log.d(TAG, "Last subscriber left, keeping " + mName + " listener for a while");
+          mMainHandler.postDelayed(mCloseLater, mGraceMillis);
+        } else {
+          Log.d(TAG, "Last subscriber left, closing " + mName + " listener");
+          closeListener();
+        }
+      }
+    }
+  }
+
+  /**
+   * Subscribes to a channel while the stream has a started observer. A value replayed on restart
+   * that the stream already holds is not set again, so observers are not called twice.
+   *
+   * @param <T> Data type delivered by the channel
+   * @param <V> Data type of the stream
+   */
+  private static class ChannelLiveData<T, V> extends LiveData<V> {
+    private final Channel<T> mChannel;
+    private final TransformInterface<T, V> mTransform;
+    private ListenerRegistration mRegistration;
+
+    ChannelLiveData(Channel<T> channel, TransformInterface<T, V> transform) {
+      mChannel = channel;
+      mTransform = transform;
+      mRegistration = null;
+    }
+
+    @Override
+    protected void onActive() {
+      mRegistration =
+          mChannel.subscribe(
+              mTransform,
+              value -> {
+                if (value == null || value != getValue()) {
+                  setValue(value);
+                }
+              });
+    }
+
+    @Override
+    protected void onInactive() {
+      if (mRegistration != null) {
+        mRegistration.remove();
+        mRegistration = null;
+      }
+    }
+  }
+
+  /**
+   * Subscribes to the household, my tasks and users channels while the stream has a started
+   * observer, and sets a {@link HouseholdState} on the next frame after any of them changes.
+   */
+  private class StateLiveData extends LiveData<HouseholdState> {
+    private final List<ListenerRegistration> mRegistrations;
+    private final Choreographer.FrameCallback mEmit;
+    private boolean mEmitPosted;
+
+    // Latest parts, all from mPartsGeneration
+    private int mPartsGeneration;
+    private HouseholdModel mHousehold;
+    private List<TaskModel> mMyTasks;
+    private List<UserModel> mUsers;
+
+    StateLiveData() {
+      mRegistrations = new ArrayList<>();
+      mEmit = frameTimeNanos -> emit();
+      mEmitPosted = false;
+      mPartsGeneration = mHouseholdGeneration;
+    }
+
+    @Override
+    protected void onActive() {
+      mRegistrations.add(
+          mHouseholdChannel.<HouseholdModel>subscribe(
+              null,
+              household -> {
+                if (takePart(household)) {
+                  mHousehold = household;
+                }
+              }));
+      mRegistrations.add(
+          mMyTasksChannel.subscribe(
+              ChangeSet::getAll,
+              tasks -> {
+                if (takePart(tasks)) {
+                  mMyTasks = tasks;
+                }
+              }));
+      mRegistrations.add(
+          mUsersChannel.subscribe(
+              ChangeSet::getAll,
+              users -> {
+                if (takePart(users)) {
+                  mUsers = users;
+                }
+              }));
+    }
+
+    @Override
+    protected void onInactive() {
+      for (ListenerRegistration registration : mRegistrations) {
+        registration.remove();
+      }
+      mRegistrations.clear();
+      if (mEmitPosted) {
+        Choreographer.getInstance().removeFrameCallback(mEmit);
+        mEmitPosted = false;
+      }
+    }
+
+    // Drops parts from an older household, then schedules an emit. Returns false on failure.
+    private boolean takePart(Object part) {
+      if (mPartsGeneration != mHouseholdGeneration) {
+        mPartsGeneration = mHouseholdGeneration;
+        mHousehold = null;
+        mMyTasks = null;
+        mUsers = null;
+      }
+      if (part == null) {
+        Log.w(TAG, "Household state part failed to load");
+        setValue(null);
+        return false;
+      }
+      if (!mEmitPosted) {
+        mEmitPosted = true;
+        Choreographer.getInstance().postFrameCallback(mEmit);
+      }
+      return true;
+    }
+
+    private void emit() {
+      mEmitPosted = false;
+      if (mHousehold == null || mMyTasks == null || mUsers == null) {
+        return;
+      }
+      HouseholdState current = getValue();
+      if (current != null
+          && current.getHousehold() == mHousehold
+          && current.getMyTasks() == mMyTasks
+          && current.getUsers() == mUsers) {
+        // Replayed parts after a restart, observers already have them
+        return;
+      }
+      setValue(new HouseholdState(mHousehold, mMyTasks, mUsers));
+    }
+  }
+
+  /**
+   * A callback on a channel, with the transform applied before it is called.
+   *
+   * @param <T> Data type delivered by the channel
+   * @param <V> Data type handed to the callback
+   */
+  private static class Subscriber<T, V> {
+    final TransformInterface<T, V> mTransform;
+    final CallbackInterface<V> mCallback;
+    volatile boolean mActive;
+
+    Subscriber(TransformInterface<T, V> transform, CallbackInterface<V> callback) {
+      mTransform = transform;
+      mCallback = callback;
+      mActive = true;
+    }
+  }
+}
@@ -0,0 +1,256 @@
+package cse403.sp2020.tidy.data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import android.util.Log;
+
+import com.google.firebase.Timestamp;
+import cse403.sp2020.tidy.data.model.HouseholdModel;
+import cse403.sp2020.tidy.data.model.TaskModel;
+import cse403.sp2020.tidy.data.model.UserModel;
+
+/**
+ * Keeps the last household a user saw in a small binary file, one per user, so the next launch can
+ * show it right away while the live data loads. The file is only a hint: anything that cannot be
+ * read is treated as missing.
+ *
+ * <p>Reads and writes touch the disk, call them off the main thread.
+ */
+public class HouseholdSnapshotStore {
+  // Log info
+  private static final String TAG = "HouseholdSnapshotStore";
+
+  // Bump when the layout changes, older files are ignored
+  private static final int FORMAT_VERSION = 2;
+  private static final String FILE_PREFIX = "household_snapshot_";
+
+  /** What was on screen when the snapshot was saved. Lists are read-only, models are shared. */
+  public static class Snapshot {
+    private final HouseholdModel mHousehold;
+    private final List<UserModel> mUsers;
+    private final List<TaskModel> mTasks;
+    private final List<TaskModel> mMyTasks;
+
+    private Snapshot(
+        HouseholdModel household,
+        List<UserModel> users,
+        List<TaskModel> tasks,
+        List<TaskModel> myTasks) {
+      mHousehold = household;
+      mUsers = Collections.unmodifiableList(users);
+      mTasks = Collections.unmodifiableList(tasks);
+      mMyTasks = Collections.unmodifiableList(myTasks);
+    }
+
+    public HouseholdModel getHousehold() {
+      return mHousehold;
+    }
+
+    public List<UserModel> getUsers() {
+      return mUsers;
+    }
+
+    /** @return the tasks in the order they were shown */
+    public List<TaskModel> getTasks() {
+      return mTasks;
+    }
+
+    /** @return the user's own tasks in the order they were shown */
+    public List<TaskModel> getMyTasks() {
+      return mMyTasks;
+    }
+  }
+
+  private final File mDirectory;
+
+  /** @param directory Where snapshot files are kept, usually the app's files directory. */
+  public HouseholdSnapshotStore(File directory) {
+    mDirectory = directory;
+  }
+
+  /**
+   * Saves what a user is looking at, replacing the last snapshot.
+   *
+   * @param firebaseId User the snapshot belongs to.
+   * @param household Household being shown.
+   * @param users Users of the household.
+   * @param tasks Tasks in the order they are shown.
+   * @param myTasks Tasks of the user in the order they are shown. Saved on their own, the tasks may
+   *     only be the part of the household that was loaded.
+   */
+  public synchronized void save(
+      String firebaseId,
+      HouseholdModel household,
+      List<UserModel> users,
+      List<TaskModel> tasks,
+      List<TaskModel> myTasks) {
+    if (firebaseId == null
+        || household == null
+        || users == null
+        || tasks == null
+        || myTasks == null) {
+      Log.w(TAG, "Nothing to save");
+      return;
+    }
+
+    File file = getFile(firebaseId);
+    File temp = new File(mDirectory, file.getName() + ".tmp");
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+      out.writeInt(FORMAT_VERSION);
+      writeString(out, household.getHouseholdId());
+      writeString(out, household.getName());
+
+      out.writeInt(users.size());
+      for (UserModel user : users) {
+        writeString(out, user.getFirebaseId());
+        writeString(out, user.getFirstName());
+        writeString(out, user.getLastName());
+        List<String> preferences = user.getPreferences();
+        out.writeInt(preferences == null ? -1 : preferences.size());
+        if (preferences != null) {
+          for (String preference : preferences) {
+            writeString(out, preference);
+          }
+        }
+      }
+
+      writeTasks(out, tasks);
+      writeTasks(out, myTasks);
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to write snapshot", e);
+      temp.delete();
+      return;
+    }
+
+    // Readers never see a half written file
+    if (!temp.renameTo(file)) {
+      Log.w(TAG, "Failed to replace snapshot");
+      temp.delete();
+    } else {
+      Log.d(TAG, "Saved snapshot with " + tasks.size() + " tasks, " + myTasks.size() + " mine");
+    }
+  }
+
+  /**
+   * @param firebaseId User to load the snapshot of.
+   * @return the last saved snapshot of the user, or null if there is none that can be read.
+   */
+  public synchronized Snapshot load(String firebaseId) {
+    if (firebaseId == null) {
+      return null;
+    }
+
+    File file = getFile(firebaseId);
+    if (!file.exists()) {
+      return null;
+    }
+
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      if (in.readInt() != FORMAT_VERSION) {
+        Log.d(TAG, "Ignoring snapshot from another version");
+        return null;
+      }
+
+      HouseholdModel household = new HouseholdModel();
+      household.setHouseholdId(readString(in));
+      household.setName(readString(in));
+
+      int userCount = in.readInt();
+      List<UserModel> users = new ArrayList<>(userCount);
+      for (int i = 0; i < userCount; i++) {
+        UserModel user = new UserModel();
+        user.setFirebaseId(readString(in));
+        user.setFirstName(readString(in));
+        user.setLastName(readString(in));
+        int preferenceCount = in.readInt();
+        if (preferenceCount >= 0) {
+          List<String> preferences = new ArrayList<>(preferenceCount);
+          for (int j = 0; j < preferenceCount; j++) {
+            preferences.add(readString(in));
+          }
+          user.setPreferences(preferences);
+        }
+        users.add(user);
+      }
+
+      List<TaskModel> tasks = readTasks(in);
+      List<TaskModel> myTasks = readTasks(in);
+      return new Snapshot(household, users, tasks, myTasks);
+    } catch (IOException | RuntimeException e) {
+      Log.w(TAG, "Failed to read snapshot, ignoring it", e);
+      return null;
+    }
+  }
+
+  /** Removes the snapshot of a user, for example when they sign out */
+  public synchronized void delete(String firebaseId) {
+    if (firebaseId != null && getFile(firebaseId).delete()) {
+      Log.d(TAG, "Deleted snapshot");
+    }
+  }
+
+  private File getFile(String firebaseId) {
+    // Firebase ids are alphanumeric, anything else is replaced to keep the name a plain file name
+    return new File(mDirectory, FILE_PREFIX + firebaseId.replaceAll("[^A-Za-z0-9_-]", "_"));
+  }
+
+  private static void writeTasks(DataOutputStream out, List<TaskModel> tasks) throws IOException {
+    out.writeInt(tasks.size());
+    for (TaskModel task : tasks) {
+      writeString(out, task.getTaskId());
+      writeString(out, task.getName());
+      writeString(out, task.getDescription());
+      out.writeInt(task.getPriority());
+      writeString(out, task.getAssignedTo());
+      out.writeBoolean(task.isCompleted());
+      Timestamp assignedDate = task.getAssignedDate();
+      out.writeBoolean(assignedDate != null);
+      if (assignedDate != null) {
+        out.writeLong(assignedDate.getSeconds());
+        out.writeInt(assignedDate.getNanoseconds());
+      }
+    }
+  }
+
+  private static List<TaskModel> readTasks(DataInputStream in) throws IOException {
+    int taskCount = in.readInt();
+    List<TaskModel> tasks = new ArrayList<>(taskCount);
+    for (int i = 0; i < taskCount; i++) {
+      TaskModel task = new TaskModel();
+      task.setTaskId(readString(in));
+      task.setName(readString(in));
+      task.setDescription(readString(in));
+      task.setPriority(in.readInt());
+      task.setAssignedTo(readString(in));
+      task.setCompleted(in.readBoolean());
+      if (in.readBoolean()) {
+        task.setAssignedDate(new Timestamp(in.readLong(), in.readInt()));
+      }
+      tasks.add(task);
+    }
+    return tasks;
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      out.writeUTF(value);
+    }
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+}
@@ -0,0 +1,40 @@
+package cse403.sp2020.tidy.data;
+
+import java.util.List;
+
+import cse403.sp2020.tidy.data.model.HouseholdModel;
+import cse403.sp2020.tidy.data.model.TaskModel;
+import cse403.sp2020.tidy.data.model.UserModel;
+
+/**
+ * The household, the current user's tasks and the users of the household as they were at one
+ * point, all from the same household. Built by {@link
+ * HouseholdRepository#getHouseholdStateStream()} once every part has loaded, so screens can render
+ * them together.
+ */
+public class HouseholdState {
+  private final HouseholdModel mHousehold;
+  private final List<TaskModel> mMyTasks;
+  private final List<UserModel> mUsers;
+
+  HouseholdState(HouseholdModel household, List<TaskModel> myTasks, List<UserModel> users) {
+    mHousehold = household;
+    mMyTasks = myTasks;
+    mUsers = users;
+  }
+
+  /** @return the current household */
+  public HouseholdModel getHousehold() {
+    return mHousehold;
+  }
+
+  /** @return read-only list of the tasks assigned to the current user */
+  public List<TaskModel> getMyTasks() {
+    return mMyTasks;
+  }
+
+  /** @return read-only list of the users in the household */
+  public List<UserModel> getUsers() {
+    return mUsers;
+  }
+}
@@ -1,14 +1,31 @@
 package cse403.sp2020.tidy.data;
 
-import java.util.List;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import android.net.Uri;
 import android.util.Log;
 
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.Timestamp;
 import com.google.firebase.dynamiclinks.DynamicLink;
 import com.google.firebase.dynamiclinks.FirebaseDynamicLinks;
 import com.google.firebase.firestore.*;
+import cse403.sp2020.tidy.data.codec.HouseholdCodec;
+import cse403.sp2020.tidy.data.codec.TaskCodec;
+import cse403.sp2020.tidy.data.codec.UserCodec;
 import cse403.sp2020.tidy.data.model.HouseholdModel;
 import cse403.sp2020.tidy.data.model.TaskModel;
 import cse403.sp2020.tidy.data.model.UserModel;
@@ -24,6 +41,12 @@ import cse403.sp2020.tidy.data.model.UserModel;
  *
  * <p>- Aside from get*, all methods will use a callback interface to return the result.
  *
+ * <p>- Lookups also come as *Async methods returning a {@link Task}, so independent ones can run
+ * together. Identical calls in flight share one task, and calls fail after a timeout.
+ *
+ * <p>- Models and lists handed out are shared with every other reader and must not be changed.
+ * Lists throw if modified, models are plain objects, so copy them with their copy constructors.
+ *
  * <p>Database Details:
  *
  * <p>- Callbacks leverage Firestore's real-time capabilities, which allows for live updates.
@@ -31,33 +54,140 @@ import cse403.sp2020.tidy.data.model.UserModel;
  * <p>- Callbacks are asynchronous, but will usually happen very quickly due to caching.
  *
  * <p>- Caching also significantly reduces network usage, even when there are a lot of changes.
+ *
+ * <p>- Listeners are not called for snapshots that leave the data as it was, such as the echo of a
+ * write that was already applied locally, see {@link #getSuppressedEvents()}.
+ *
+ * <p>- One-off lookups try the cache before the server, see {@link #setLookupSource}.
+ *
+ * <p>Threading Details:
+ *
+ * <p>- Operations are started from the main thread and call back on it.
+ *
+ * <p>- Snapshot listeners run on the main thread unless a snapshot executor is set, in which case
+ * documents are parsed and indexed on that executor and listener callbacks are called there.
+ *
+ * <p>- Getters are safe to call from any thread.
  */
 public class ModelInterface {
   // Log info
   private static final String TAG = "ModelInterface";
 
+  /** Page size of task windows whose first page is prefetched during login */
+  public static final int TASK_WINDOW_PAGE_SIZE = 50;
+
   // Firestore Constants
   private static final String HOUSEHOLD_COLLECTION_NAME = "Households";
   private static final String TASK_COLLECTION_NAME = "Tasks";
   private static final String USERS_COLLECTION_NAME = "Users";
   private static final String USER_ID_FIELD = "firebaseId";
   private static final String UNASSIGNED_USER_COLLECTION_NAME = "Unassigned";
+  private static final String USER_DIRECTORY_COLLECTION_NAME = "UserDirectory";
+  private static final String HOUSEHOLD_ID_FIELD = "householdId";
+  private static final String ARCHIVE_COLLECTION_NAME = "Archive";
+  private static final String ARCHIVED_DATE_FIELD = "archivedDate";
+
+  // How long task field changes wait to be merged with others to the same task
+  private static final long TASK_WRITE_WINDOW_MILLIS = 300;
+
+  // How long listeners started during login wait for the real ones
+  private static final long PREFETCH_TIMEOUT_MILLIS = 10000;
+  private static final String PREFETCH_HOUSEHOLD = "household";
+  private static final String PREFETCH_TASK_WINDOW = "taskWindow";
+  private static final String PREFETCH_USERS = "users";
+  private static final String PREFETCH_MY_TASKS = "myTasks";
+
+  // How long *Async calls wait before failing
+  private static final long ASYNC_TIMEOUT_MILLIS = 15000;
+
+  // Bulk writes, Firestore allows at most 500 operations in one batch
+  private static final int MAX_BATCH_OPERATIONS = 500;
+  private static final int MAX_BATCHES_IN_FLIGHT = 4;
+
+  // Order of tasks when they are kept by priority, ties are broken by id like Firestore does
+  private static final Comparator<TaskModel> TASK_ORDER =
+      (t1, t2) -> {
+        int order = Integer.compare(t1.getPriority(), t2.getPriority());
+        if (order != 0) return order;
+        String id1 = t1.getTaskId() == null ? "" : t1.getTaskId();
+        String id2 = t2.getTaskId() == null ? "" : t2.getTaskId();
+        return id1.compareTo(id2);
+      };
 
   // Household objects
-  private HouseholdModel mHousehold;
-  private List<TaskModel> mTasks;
-  private List<UserModel> mUsers;
+  private volatile HouseholdModel mHousehold;
+  private final Object mHouseholdLock;
+  private DocumentMirror<TaskModel> mTasks;
+  private DocumentMirror<UserModel> mUsers;
+
+  // Only the tasks assigned to the current user, kept by their own listener
+  private DocumentMirror<TaskModel> mMyTasks;
+
+  // Task indexes kept current by the tasks listener (assignedTo -> taskId -> task), guarded by
+  // the lock of mTasks
+  private Map<String, Map<String, TaskModel>> mTasksByAssignee;
+  private Map<String, String> mAssigneeByTask;
 
   // Firestore Listeners
   private ListenerRegistration mHouseholdListener;
   private ListenerRegistration mTasksListener;
+  private ListenerRegistration mMyTasksListener;
   private ListenerRegistration mUsersListener;
 
+  // Bumped when a listener is replaced or removed, events still queued for the old one are dropped
+  private volatile int mHouseholdGeneration;
+  private volatile int mTasksGeneration;
+  private volatile int mMyTasksGeneration;
+  private volatile int mUsersGeneration;
+
+  // Where snapshots are processed, null for the main thread
+  private volatile Executor mSnapshotExecutor;
+
+  // Convert documents with the hand-written codecs instead of reflection
+  private volatile boolean mCodecsEnabled;
+
+  // Look tasks up before updating or removing them, the old two round trip path
+  private boolean mReadBeforeTaskWrites;
+
+  // Merges completion and priority changes made in quick succession
+  private final TaskWriteQueue mTaskWrites;
+
+  // Show task changes locally before they are written, and where to show them
+  private volatile boolean mOptimisticWrites;
+  private volatile CallbackInterface<ChangeSet<TaskModel>> mTaskChangesCallback;
+  private volatile CallbackInterface<ChangeSet<TaskModel>> mMyTaskChangesCallback;
+  private final List<TaskWindow> mTaskWindows;
+
+  // Issue independent login reads together, and listen to the household once its id is known
+  private volatile boolean mParallelLookups;
+  private final QueryPrefetcher mPrefetcher;
+
+  // Have the tasks listener order tasks by priority, and keep the mirrors in that order
+  private volatile boolean mOrderedTasks;
+
+  // Where lookups read from, and how often trying the cache first paid off
+  private volatile Source mLookupSource;
+  private final AtomicInteger mCacheHits;
+  private final AtomicInteger mCacheMisses;
+
+  // Server answers the last setCurrentUser waited on one after the other
+  private final AtomicInteger mLoginRoundTrips;
+
+  // Set by tests, the next task removal fails with it
+  private final AtomicReference<Exception> mNextRemovalFailure;
+
+  // Snapshots that changed nothing and were not passed on to listeners
+  private final AtomicInteger mSuppressedEvents;
+
+  // Runs the *Async methods
+  private final AsyncCalls mAsyncCalls;
+  private volatile long mAsyncTimeoutMillis;
+
   // Firestore Database instance
   private FirebaseFirestore mFirestore;
 
   // User
-  private UserModel mFirebaseUser;
+  private volatile UserModel mFirebaseUser;
 
   // Constructor
   // Takes a Firestore instance
@@ -67,13 +197,41 @@ public class ModelInterface {
 
     // Initialize data
     mHousehold = null;
-    mTasks = new ArrayList<>();
-    mUsers = new ArrayList<>();
+    mHouseholdLock = new Object();
+    mTasks = new DocumentMirror<>(this::buildTask, TaskCodec::toMap);
+    mUsers = new DocumentMirror<>(this::buildUser, UserCodec::toMap);
+    mMyTasks = new DocumentMirror<>(this::buildTask, TaskCodec::toMap);
+    mTasksByAssignee = new HashMap<>();
+    mAssigneeByTask = new HashMap<>();
 
     // Initialize Listeners
     mHouseholdListener = null;
     mTasksListener = null;
+    mMyTasksListener = null;
     mUsersListener = null;
+    mHouseholdGeneration = 0;
+    mTasksGeneration = 0;
+    mMyTasksGeneration = 0;
+    mUsersGeneration = 0;
+    mSnapshotExecutor = null;
+    mCodecsEnabled = true;
+    mReadBeforeTaskWrites = false;
+    mTaskWrites = new TaskWriteQueue(this::opUpdateTaskFields, TASK_WRITE_WINDOW_MILLIS);
+    mOptimisticWrites = false;
+    mTaskChangesCallback = null;
+    mMyTaskChangesCallback = null;
+    mTaskWindows = new ArrayList<>();
+    mParallelLookups = false;
+    mOrderedTasks = false;
+    mLookupSource = Source.CACHE;
+    mCacheHits = new AtomicInteger();
+    mCacheMisses = new AtomicInteger();
+    mLoginRoundTrips = new AtomicInteger();
+    mNextRemovalFailure = new AtomicReference<>();
+    mSuppressedEvents = new AtomicInteger();
+    mPrefetcher = new QueryPrefetcher(PREFETCH_TIMEOUT_MILLIS);
+    mAsyncCalls = new AsyncCalls();
+    mAsyncTimeoutMillis = ASYNC_TIMEOUT_MILLIS;
 
     // Initialize user
     mFirebaseUser = null;
@@ -84,6 +242,7 @@ public class ModelInterface {
   /** Removes all listeners Clears all local data in the interface */
   public void cleanUp() {
     clearData();
+    mPrefetcher.releaseAll();
   }
 
   /** Removes all callbacks */
@@ -91,6 +250,268 @@ public class ModelInterface {
     clearListeners();
   }
 
+  /**
+   * Sets where snapshot listeners do their work. Documents are parsed and indexed on the executor
+   * and the listener callbacks are called on it, so callers have to move results to the main
+   * thread themselves. Only affects listeners set afterwards.
+   *
+   * @param executor Executor to process snapshots on, or null for the main thread (default). Should
+   *     run one task at a time so updates stay in order.
+   */
+  public void setSnapshotExecutor(Executor executor) {
+    mSnapshotExecutor = executor;
+  }
+
+  /** @return the executor snapshots are processed on, or null for the main thread */
+  public Executor getSnapshotExecutor() {
+    return mSnapshotExecutor;
+  }
+
+  /**
+   * Chooses how models are converted to and from documents. The codecs read and write fields
+   * directly, reflection goes through Firestore's class mapper. Both use the same field names.
+   * Task updates always go through the codec, since update() only takes a field map.
+   *
+   * @param enabled true to use the codecs (default), false to use reflection.
+   */
+  public void setCodecsEnabled(boolean enabled) {
+    mCodecsEnabled = enabled;
+  }
+
+  /**
+   * Chooses how task updates and removals make sure the task exists. By default the write itself
+   * fails if the task is missing, which takes one round trip. The old path reads the task first and
+   * then writes, and is only kept to compare the two.
+   *
+   * @param enabled true to read before writing, false to write directly (default).
+   */
+  public void setReadBeforeTaskWrites(boolean enabled) {
+    mReadBeforeTaskWrites = enabled;
+  }
+
+  /**
+   * Sets how long completion and priority changes wait before they are sent. Changes to the same
+   * task made within that time go out as one write.
+   *
+   * @param windowMillis Time to wait in milliseconds, 0 sends every change right away.
+   */
+  public void setTaskWriteWindow(long windowMillis) {
+    mTaskWrites.setWindow(windowMillis);
+  }
+
+  /** Sends waiting completion and priority changes right away */
+  public void flushTaskWrites() {
+    mTaskWrites.flush();
+  }
+
+  /** @return how many completion and priority changes were merged into another write */
+  public int getSavedTaskWrites() {
+    return mTaskWrites.getSavedWrites();
+  }
+
+  /**
+   * Chooses whether task changes made through this interface show up before the server has them.
+   * When enabled, adding, updating and removing tasks changes the local tasks right away and the
+   * tasks listener, the current user's tasks listener and open task windows are called with the
+   * change. If the write fails, the task is read again and they are told about the rollback.
+   *
+   * @param enabled true to apply task changes locally first, false to wait for the listener
+   *     (default).
+   */
+  public void setOptimisticWrites(boolean enabled) {
+    mOptimisticWrites = enabled;
+  }
+
+  /**
+   * Chooses how setCurrentUser and setCurrentHousehold look things up. When enabled, reads that
+   * might be needed are sent together instead of one after the other, like the unassigned users
+   * alongside the directory, and the household, tasks and users of a household start loading as
+   * soon as its id is known, before the callback. Some of those reads go unused, so this trades a
+   * few extra reads for a faster start. A user and household named by the directory are read
+   * together either way.
+   *
+   * @param enabled true to look things up in parallel, false to look them up in order (default).
+   */
+  public void setParallelLookups(boolean enabled) {
+    mParallelLookups = enabled;
+  }
+
+  /**
+   * Configures how Firestore keeps data on the device. Must be called before the Firestore instance
+   * is used for anything, including by other code sharing the instance.
+   *
+   * @param persistenceEnabled true to keep cached data on disk between launches.
+   * @param cacheSizeBytes Size the disk cache is trimmed to, or {@link
+   *     FirebaseFirestoreSettings#CACHE_SIZE_UNLIMITED}.
+   * @return true if the settings were applied, false if Firestore was already in use.
+   */
+  public boolean setPersistence(boolean persistenceEnabled, long cacheSizeBytes) {
+    try {
+      mFirestore.setFirestoreSettings(
+          new FirebaseFirestoreSettings.Builder(mFirestore.getFirestoreSettings())
+              .setPersistenceEnabled(persistenceEnabled)
+              .setCacheSizeBytes(cacheSizeBytes)
+              .build());
+      return true;
+    } catch (IllegalStateException | IllegalArgumentException e) {
+      Log.w(TAG, "Could not change Firestore settings", e);
+      return false;
+    }
+  }
+
+  /**
+   * Chooses where lookups read documents from, such as the household check in setCurrentHousehold.
+   * Listeners are not affected. Checking that a task exists before writing it never starts with the
+   * cache, which may still hold a task that was deleted elsewhere.
+   *
+   * @param source {@link Source#CACHE} to try the cache first and go to the server when the
+   *     document is not cached (default), {@link Source#SERVER} to always ask the server, or {@link
+   *     Source#DEFAULT} for Firestore's own choice.
+   */
+  public void setLookupSource(Source source) {
+    mLookupSource = source == null ? Source.DEFAULT : source;
+  }
+
+  /**
+   * Chooses the order of task lists. When enabled, the tasks listener asks Firestore for tasks by
+   * priority and places each changed task at the position Firestore reports for it, instead of
+   * callers sorting every update. The current user's tasks are kept in the same order. Tasks
+   * without a priority field are left out by the ordered query, tasks written by this class always
+   * have one. Takes effect when the tasks listener is next set.
+   *
+   * @param enabled true to keep tasks by priority, then id, false to keep them in the order they
+   *     were first seen (default).
+   */
+  public void setOrderedTasks(boolean enabled) {
+    mOrderedTasks = enabled;
+  }
+
+  /**
+   * Sets how long *Async calls wait for their result before failing with a {@link
+   * java.util.concurrent.TimeoutException}. The operation itself is not cancelled.
+   *
+   * @param timeoutMillis Timeout in milliseconds, 0 to wait as long as it takes.
+   */
+  public void setAsyncTimeout(long timeoutMillis) {
+    mAsyncTimeoutMillis = Math.max(0, timeoutMillis);
+  }
+
+  long getAsyncTimeout() {
+    return mAsyncTimeoutMillis;
+  }
+
+  /** @return how many *Async calls shared a call already in flight instead of starting one */
+  public int getSharedAsyncCalls() {
+    return mAsyncCalls.getSharedCalls();
+  }
+
+  /** @return how many cache-first lookups were answered by the cache */
+  public int getCacheHits() {
+    return mCacheHits.get();
+  }
+
+  /** @return how many cache-first lookups had to go to the server */
+  public int getCacheMisses() {
+    return mCacheMisses.get();
+  }
+
+  /**
+   * @return how many server answers the last setCurrentUser waited on one after the other, reads
+   *     sent together count once. A user found through the directory takes two.
+   */
+  public int getLoginRoundTrips() {
+    return mLoginRoundTrips.get();
+  }
+
+  /** @return how many listener snapshots were dropped because they changed nothing */
+  public int getSuppressedEvents() {
+    return mSuppressedEvents.get();
+  }
+
+  /**
+   * Reads a task of the current household, whether or not it is mirrored by the tasks listener.
+   * Requires that the current user is set AND is in a household. Returns the task via callback, or
+   * null if it does not exist or on failure.
+   *
+   * @param taskId Id of the task to read.
+   * @param source Where to read from, see {@link #setLookupSource(Source)}.
+   * @param callback Interface that accepts a {@link TaskModel}.
+   */
+  public void fetchTask(
+      final String taskId, final Source source, final CallbackInterface<TaskModel> callback) {
+    if (callback == null) {
+      Log.w(TAG, "Callback is null -- fetchTask");
+      return;
+    }
+    if (mFirebaseUser == null) {
+      Log.w(TAG, "User is null, cannot fetch task");
+      callback.callback(null);
+      return;
+    }
+    if (mHousehold == null || getTaskCollection() == null) {
+      Log.w(TAG, "User is not in household, cannot fetch task");
+      callback.callback(null);
+      return;
+    }
+    if (taskId == null) {
+      Log.w(TAG, "Task id is null, cannot fetch task");
+      callback.callback(null);
+      return;
+    }
+
+    lookup(getTaskCollection().document(taskId), source == null ? mLookupSource : source)
+        .addOnCompleteListener(
+            task -> {
+              if (task.isSuccessful() && task.getResult().exists()) {
+                callback.callback(buildTask(task.getResult()));
+              } else if (task.isSuccessful()) {
+                Log.w(TAG, "Task not found");
+                callback.callback(null);
+              } else {
+                Log.w(TAG, "Failed to fetch task: " + task.getException());
+                callback.callback(null);
+              }
+            });
+  }
+
+  /** Removes the household callback, if there is one */
+  public void removeHouseholdListener() {
+    mHouseholdGeneration++;
+    if (mHouseholdListener != null) {
+      mHouseholdListener.remove();
+      mHouseholdListener = null;
+    }
+  }
+
+  /** Removes the users callback, if there is one */
+  public void removeUsersListener() {
+    mUsersGeneration++;
+    if (mUsersListener != null) {
+      mUsersListener.remove();
+      mUsersListener = null;
+    }
+  }
+
+  /** Removes the tasks callback, if there is one */
+  public void removeTasksListener() {
+    mTasksGeneration++;
+    mTaskChangesCallback = null;
+    if (mTasksListener != null) {
+      mTasksListener.remove();
+      mTasksListener = null;
+    }
+  }
+
+  /** Removes the callback on the current user's tasks, if there is one */
+  public void removeMyTasksListener() {
+    mMyTasksGeneration++;
+    mMyTaskChangesCallback = null;
+    if (mMyTasksListener != null) {
+      mMyTasksListener.remove();
+      mMyTasksListener = null;
+    }
+  }
+
   /* Single callback Methods */
 
   /**
@@ -112,7 +533,12 @@ public class ModelInterface {
       return;
     }
 
-    opFindOrCreateUser(firebaseId, callback);
+    mLoginRoundTrips.set(0);
+    if (mParallelLookups) {
+      opResolveUserInParallel(firebaseId, callback);
+    } else {
+      opFindOrCreateUser(firebaseId, callback);
+    }
   }
 
   /**
@@ -238,9 +664,10 @@ public class ModelInterface {
     }
 
     // Make sure id is not overridden
-    user.setFirebaseId(mFirebaseUser.getFirebaseId());
+    UserModel newUser = new UserModel(user);
+    newUser.setFirebaseId(mFirebaseUser.getFirebaseId());
 
-    opUpdateUser(user, callback);
+    opUpdateUser(newUser, callback);
   }
 
   /**
@@ -276,7 +703,8 @@ public class ModelInterface {
   /**
    * Attempts to add the provided task to the household. Ignores the id in the provided object and
    * auto-generates a new one. Requires that the current user is set AND is in a household. Returns
-   * the task object via callback, or null on failure.
+   * a copy of the task with its new id via callback, or null on failure. The given object is not
+   * changed.
    *
    * @param task Task object with metadata to create task with. Id field is ignored, a new one is
    *     auto-generated.
@@ -342,12 +770,17 @@ public class ModelInterface {
       return;
     }
 
-    opUpdateTask(task, callback);
+    if (mReadBeforeTaskWrites) {
+      opReadAndUpdateTask(task, callback);
+    } else {
+      opUpdateTask(task, callback);
+    }
   }
 
   /**
-   * Attempts to remove the task from the current household. Requires that the current user is set
-   * AND is in a household. Returns the deleted task object via callback, or null on failure.
+   * Attempts to remove the task from the current household in one write, which fails if the task is
+   * missing. Requires that the current user is set AND is in a household. Returns the deleted task
+   * via callback, as last loaded or as given if it wasn't loaded, or null on failure.
    *
    * @param task Task object to delete, ignores metadata fields. Uses Id field to find task.
    * @param callback Interface that accepts a {@link TaskModel}.
@@ -377,156 +810,639 @@ public class ModelInterface {
       return;
     }
 
-    opRemoveTask(task, callback);
+    if (mReadBeforeTaskWrites) {
+      opReadAndRemoveTask(task, callback);
+    } else {
+      opRemoveTask(task, callback);
+    }
   }
 
-  /* Get (No Callback) Methods */
-
   /**
-   * If the user is not set, all other operations will not work
+   * Attempts to add several tasks to the current household at once. Tasks are written in batches,
+   * so this takes far fewer round trips than adding them one by one. Requires that the current user
+   * is set AND is in a household. Returns the tasks via callback in the order they were given, with
+   * null in place of each task that could not be added, or null on failure.
    *
-   * @return returns the current user, or null if there isn't one.
+   * @param tasks Tasks to create, id fields are ignored and new ones are auto-generated. The given
+   *     objects are not changed, the returned copies carry the new ids.
+   * @param callback Interface that accepts a list of {@link TaskModel}.
    */
-  public UserModel getCurrentUser() {
-    if (mFirebaseUser != null) return new UserModel(mFirebaseUser);
-    return null;
-  }
+  public void addTasks(
+      final List<TaskModel> tasks, final CallbackInterface<List<TaskModel>> callback) {
+    if (callback == null) {
+      Log.w(TAG, "Callback is null -- addTasks");
+      return;
+    }
+    if (!canWriteTasks(tasks, "add tasks to household")) {
+      callback.callback(null);
+      return;
+    }
 
-  /**
-   * The current household represents if the user is part of a household. If it is null, the user
-   * has no household (or isn't set). If there isn't an a active listener for this type, data may be
-   * inaccurate.
-   *
-   * @return returns the current household, or null if there isn't one.
-   */
-  public HouseholdModel getHousehold() {
-    if (mHousehold != null) return new HouseholdModel(mHousehold);
-    return null;
+    runTaskBulk(tasks, false, this::opAddTasks, callback);
   }
 
   /**
-   * The current list is dependent on an active listener for users. If there isn't an a active
-   * listener for this type, data may be inaccurate. Recommendation is to simply use the listener
-   * callback.
+   * Attempts to update several tasks in the current household at once. Tasks are written in
+   * batches, a task that no longer exists only fails itself. Requires that the current user is set
+   * AND is in a household. Returns the tasks via callback in the order they were given, with null
+   * in place of each task that could not be updated, or null on failure.
    *
-   * @return returns a potentially empty {@link List} of {@link UserModel}s. returns null if there
-   *     isn't a household set.
+   * @param tasks Tasks with metadata to update with. Uses Id fields to find the tasks.
+   * @param callback Interface that accepts a list of {@link TaskModel}.
    */
-  public List<UserModel> getUsers() {
-    if (mHousehold != null) return new ArrayList<>(mUsers);
-    return null;
+  public void updateTasks(
+      final List<TaskModel> tasks, final CallbackInterface<List<TaskModel>> callback) {
+    if (callback == null) {
+      Log.w(TAG, "Callback is null -- updateTasks");
+      return;
+    }
+    if (!canWriteTasks(tasks, "update tasks")) {
+      callback.callback(null);
+      return;
+    }
+
+    runTaskBulk(tasks, true, this::opUpdateTasks, callback);
   }
 
   /**
-   * The current list is dependent on an active listener for tasks. If there isn't an a active
-   * listener for this type, data may be inaccurate. Recommendation is to simply use the listener
-   * callback.
+   * Attempts to remove several tasks from the current household at once. Tasks are written in
+   * batches, a task that no longer exists only fails itself. Requires that the current user is set
+   * AND is in a household. Returns the deleted tasks via callback in the order they were given,
+   * with null in place of each task that could not be removed, or null on failure.
    *
-   * @return returns a potentially empty {@link List} of {@link TaskModel}s. returns null if there
-   *     isn't a household set.
+   * @param tasks Tasks to delete, ignores metadata fields. Uses Id fields to find the tasks.
+   * @param callback Interface that accepts a list of {@link TaskModel}.
    */
-  public List<TaskModel> getTasks() {
-    if (mHousehold != null) return new ArrayList<>(mTasks);
-    return null;
-  }
+  public void removeTasks(
+      final List<TaskModel> tasks, final CallbackInterface<List<TaskModel>> callback) {
+    if (callback == null) {
+      Log.w(TAG, "Callback is null -- removeTasks");
+      return;
+    }
+    if (!canWriteTasks(tasks, "remove tasks from household")) {
+      callback.callback(null);
+      return;
+    }
 
-  /* Event Listener (Repeat Callback) Methods */
+    runTaskBulk(tasks, true, this::opRemoveTasks, callback);
+  }
 
   /**
-   * Sets an event listener on the household document in the database. Removes any previous listener
-   * for the household. Sets any updates to local household object. Requires the current user to
-   * exist AND be in household.
+   * Moves the tasks of the current household that were completed before a cutoff out of the Tasks
+   * collection and into the household's Archive collection. Archived tasks are no longer seen by
+   * task listeners, task windows or the assignment function, see {@link #fetchArchivedTasks} to
+   * read them. Chores recur by default and archived ones are not brought back, so this is only
+   * meant to be called when the household asks for it. Requires that the current user is set AND
+   * is in a household. Returns the archived tasks via callback, or null on failure.
    *
-   * @param callback Interface that accepts a {@link HouseholdModel}. Will be called initially with
-   *     current data. Will be called repeatedly with updates.
+   * <p>Each task is checked and moved in its own transaction, so a task reopened after it was
+   * found is left alone.
+   *
+   * @param olderThanMillis How long ago a task has to have been completed to be archived.
+   * @param callback Interface that accepts a list of the archived {@link TaskModel}s.
    */
-  public void setHouseholdListener(final CallbackInterface<HouseholdModel> callback) {
+  public void archiveCompletedTasks(
+      final long olderThanMillis, final CallbackInterface<List<TaskModel>> callback) {
     if (callback == null) {
-      Log.w(TAG, "Callback is null -- setHouseholdListener");
+      Log.w(TAG, "Callback is null -- archiveCompletedTasks");
       return;
     }
     if (mFirebaseUser == null) {
-      Log.w(TAG, "User is null, cannot listen on household");
+      Log.w(TAG, "User is null, cannot archive tasks");
       callback.callback(null);
       return;
     }
-    if (mHousehold == null) {
-      Log.w(TAG, "User is not in household, cannot listen on household");
+    if (mHousehold == null || getTaskCollection() == null) {
+      Log.w(TAG, "User is not in household, cannot archive tasks");
       callback.callback(null);
       return;
     }
 
-    opSetHouseholdListener(callback);
+    opArchiveCompletedTasks(olderThanMillis, callback);
   }
 
   /**
-   * Sets an event listener on the Users collection of the current household. Removes any previous
-   * listener for the Users collection. Sets and updates the local list of users. Requires the
-   * current user to exist AND be in household.
+   * Reads a page of the archived tasks of the current household, most recently completed first.
+   * The archive is only read when asked for, nothing listens to it. Requires that the current user
+   * is set AND is in a household. Returns the tasks via callback, or null on failure.
    *
-   * @param callback Interface that accepts a {@link List} of {@link UserModel}s. Will be called
-   *     initially with current data. Will be called repeatedly with updates.
+   * @param limit Most tasks to read.
+   * @param after Last task of the previous page, or null for the first page.
+   * @param callback Interface that accepts a list of {@link TaskModel}s, empty past the last page.
    */
-  public void setUsersListener(final CallbackInterface<List<UserModel>> callback) {
+  public void fetchArchivedTasks(
+      final int limit, final TaskModel after, final CallbackInterface<List<TaskModel>> callback) {
     if (callback == null) {
-      Log.w(TAG, "Callback is null -- setUsersListener");
+      Log.w(TAG, "Callback is null -- fetchArchivedTasks");
       return;
     }
     if (mFirebaseUser == null) {
-      Log.w(TAG, "User is null, cannot listen on users");
+      Log.w(TAG, "User is null, cannot fetch archived tasks");
       callback.callback(null);
       return;
     }
-    if (mHousehold == null) {
-      Log.w(TAG, "User is not in household, cannot listen on users");
+    if (mHousehold == null || getArchiveCollection() == null) {
+      Log.w(TAG, "User is not in household, cannot fetch archived tasks");
       callback.callback(null);
       return;
     }
-    if (getUserCollection() == null) {
-      Log.w(TAG, "User collection is null, cannot listen on users");
-      callback.callback(null);
+
+    Query query =
+        getArchiveCollection()
+            .orderBy(TaskCodec.COMPLETED_DATE, Query.Direction.DESCENDING)
+            .orderBy(FieldPath.documentId(), Query.Direction.DESCENDING);
+    if (after != null) {
+      query = query.startAfter(after.getCompletedDate(), after.getTaskId());
     }
+    query
+        .limit(limit)
+        .get()
+        .addOnCompleteListener(
+            task -> {
+              if (!task.isSuccessful() || task.getResult() == null) {
+                Log.w(TAG, "Failed to fetch archived tasks: " + task.getException());
+                callback.callback(null);
+                return;
+              }
 
-    opSetUsersListener(callback);
+              List<TaskModel> tasks = new ArrayList<>();
+              for (DocumentSnapshot document : task.getResult().getDocuments()) {
+                tasks.add(buildTask(document));
+              }
+              callback.callback(Collections.unmodifiableList(tasks));
+            });
   }
 
   /**
-   * Sets an event listener on the Tasks collection of the current household. Removes any previous
-   * listener for the Tasks collection. Sets and updates the local list of tasks. Requires the
-   * current user to exist AND be in household.
+   * Attempts to mark a task in the current household as completed or not. Only the completed field
+   * is written, so other changes to the task are kept. The write waits briefly to be merged with
+   * other changes to the task. Requires that the current user is set AND is in a household. Returns
+   * the task id via callback, or null on failure.
    *
-   * @param callback Interface that accepts a {@link List} of {@link TaskModel}s. Will be called
-   *     initially with current data. Will be called repeatedly with updates.
+   * @param taskId Id of the task to change.
+   * @param completed New completion status.
+   * @param callback Interface that accepts the task id.
    */
-  public void setTasksListener(final CallbackInterface<List<TaskModel>> callback) {
+  public void setTaskCompleted(
+      final String taskId, final boolean completed, final CallbackInterface<String> callback) {
     if (callback == null) {
-      Log.w(TAG, "Callback is null -- setUsersListener");
+      Log.w(TAG, "Callback is null -- setTaskCompleted");
       return;
     }
     if (mFirebaseUser == null) {
-      Log.w(TAG, "User is null, cannot listen on tasks");
+      Log.w(TAG, "User is null, cannot update task");
       callback.callback(null);
       return;
     }
     if (mHousehold == null) {
-      Log.w(TAG, "User is not in household, cannot listen on tasks");
+      Log.w(TAG, "User is not in household, cannot update task");
       callback.callback(null);
       return;
     }
     if (getTaskCollection() == null) {
-      Log.w(TAG, "Task collection is null, cannot listen on tasks");
+      Log.w(TAG, "No tasks collection, cannot update task");
+      callback.callback(null);
+      return;
+    }
+    if (taskId == null) {
+      Log.w(TAG, "Task id is null, cannot update task");
       callback.callback(null);
       return;
     }
 
-    opSetTasksListener(callback);
+    applyLocalTask(
+        taskId,
+        current -> {
+          if (current == null) return null;
+          TaskModel updated = new TaskModel(current);
+          updated.setCompleted(completed);
+          updated.setCompletedDate(completed ? Timestamp.now() : null);
+          return updated;
+        });
+    mTaskWrites.setCompleted(taskId, completed, callback);
   }
 
-  /* Operations */
-
-  private void opCreateHousehold(
-      final HouseholdModel household, final CallbackInterface<HouseholdModel> callback) {
-    // Generate a new household doc and Id
+  /**
+   * Attempts to change the priority of a task in the current household by a relative amount. The
+   * change is applied by the server on top of the stored value, so concurrent changes add up
+   * instead of overwriting each other. The write waits briefly, so quick taps on the same task are
+   * summed into one. The priority is not taken below zero, as far as the last known value of the
+   * task and the changes still waiting to be sent go. Requires that the current user is set AND is
+   * in a household. Returns the task id via callback, or null on failure.
+   *
+   * @param taskId Id of the task to change.
+   * @param delta Amount to add to the priority number, negative for a higher priority.
+   * @param callback Interface that accepts the task id.
+   */
+  public void adjustTaskPriority(
+      final String taskId, final int delta, final CallbackInterface<String> callback) {
+    if (callback == null) {
+      Log.w(TAG, "Callback is null -- adjustTaskPriority");
+      return;
+    }
+    if (mFirebaseUser == null) {
+      Log.w(TAG, "User is null, cannot update task");
+      callback.callback(null);
+      return;
+    }
+    if (mHousehold == null) {
+      Log.w(TAG, "User is not in household, cannot update task");
+      callback.callback(null);
+      return;
+    }
+    if (getTaskCollection() == null) {
+      Log.w(TAG, "No tasks collection, cannot update task");
+      callback.callback(null);
+      return;
+    }
+    if (taskId == null) {
+      Log.w(TAG, "Task id is null, cannot update task");
+      callback.callback(null);
+      return;
+    }
+
+    TaskModel known = findTask(taskId);
+    int priority = known == null ? TaskWriteQueue.UNKNOWN_PRIORITY : known.getPriority();
+    applyLocalTask(
+        taskId,
+        current -> {
+          if (current == null) return null;
+          TaskModel updated = new TaskModel(current);
+          updated.setPriority(Math.max(0, current.getPriority() + delta));
+          return updated;
+        });
+    mTaskWrites.adjustPriority(taskId, delta, priority, callback);
+  }
+
+  /* Get (No Callback) Methods */
+
+  /**
+   * If the user is not set, all other operations will not work
+   *
+   * @return returns the current user as a shared object, or null if there isn't one.
+   */
+  public UserModel getCurrentUser() {
+    return mFirebaseUser;
+  }
+
+  /**
+   * The current household represents if the user is part of a household. If it is null, the user
+   * has no household (or isn't set). If there isn't an a active listener for this type, data may be
+   * inaccurate.
+   *
+   * @return returns the current household as a shared object, or null if there isn't one.
+   */
+  public HouseholdModel getHousehold() {
+    return mHousehold;
+  }
+
+  /**
+   * The current list is dependent on an active listener for users. If there isn't an a active
+   * listener for this type, data may be inaccurate. Recommendation is to simply use the listener
+   * callback.
+   *
+   * @return returns a potentially empty read-only {@link List} of {@link UserModel}s, shared until
+   *     the next update. returns null if there isn't a household set.
+   */
+  public List<UserModel> getUsers() {
+    if (mHousehold != null) return mUsers.snapshot();
+    return null;
+  }
+
+  /**
+   * The current list is dependent on an active listener for tasks. If there isn't an a active
+   * listener for this type, data may be inaccurate. Recommendation is to simply use the listener
+   * callback.
+   *
+   * @return returns a potentially empty read-only {@link List} of {@link TaskModel}s, shared until
+   *     the next update, ordered by priority if {@link #setOrderedTasks} is enabled. returns null
+   *     if there isn't a household set.
+   */
+  public List<TaskModel> getTasks() {
+    if (mHousehold != null) return mTasks.snapshot();
+    return null;
+  }
+
+  /**
+   * Constant time lookup of a task in the current household. Depends on an active listener for
+   * tasks or the current user's tasks, or an open task window holding the task.
+   *
+   * @param taskId Id of the task to find.
+   * @return returns the task, or null if there isn't a household set or no task has that id.
+   */
+  public TaskModel getTaskById(String taskId) {
+    if (mHousehold != null && taskId != null) return findTask(taskId);
+    return null;
+  }
+
+  /**
+   * Constant time lookup of a user in the current household. Depends on an active listener for
+   * users.
+   *
+   * @param firebaseId Firebase Id of the user to find.
+   * @return returns the user, or null if there isn't a household set or no user has that id.
+   */
+  public UserModel getUserById(String firebaseId) {
+    if (mHousehold != null && firebaseId != null) return mUsers.get(firebaseId);
+    return null;
+  }
+
+  /**
+   * Looks up the tasks assigned to a user without scanning the whole task list. Depends on an
+   * active listener for tasks. Without one, the tasks are gathered from the current user's tasks
+   * and the open task windows, which only hold the tasks they have loaded.
+   *
+   * @param firebaseId Firebase Id of the assignee.
+   * @return returns a potentially empty {@link List} of {@link TaskModel}s. returns null if there
+   *     isn't a household set.
+   */
+  public List<TaskModel> getTasksAssignedTo(String firebaseId) {
+    if (mHousehold == null) return null;
+    if (mTaskChangesCallback == null) {
+      return findTasksAssignedTo(firebaseId);
+    }
+    synchronized (mTasks) {
+      Map<String, TaskModel> assigned = mTasksByAssignee.get(firebaseId);
+      if (assigned == null) return new ArrayList<>();
+      return new ArrayList<>(assigned.values());
+    }
+  }
+
+  /* Event Listener (Repeat Callback) Methods */
+
+  /**
+   * Sets an event listener on the household document in the database. Removes any previous listener
+   * for the household. Sets any updates to local household object. Requires the current user to
+   * exist AND be in household.
+   *
+   * @param callback Interface that accepts a {@link HouseholdModel}. Will be called initially with
+   *     current data. Will be called repeatedly with updates.
+   */
+  public void setHouseholdListener(final CallbackInterface<HouseholdModel> callback) {
+    if (callback == null) {
+      Log.w(TAG, "Callback is null -- setHouseholdListener");
+      return;
+    }
+    if (mFirebaseUser == null) {
+      Log.w(TAG, "User is null, cannot listen on household");
+      callback.callback(null);
+      return;
+    }
+    if (mHousehold == null) {
+      Log.w(TAG, "User is not in household, cannot listen on household");
+      callback.callback(null);
+      return;
+    }
+
+    opSetHouseholdListener(callback);
+  }
+
+  /**
+   * Sets an event listener on the Users collection of the current household. Removes any previous
+   * listener for the Users collection. Sets and updates the local list of users. Requires the
+   * current user to exist AND be in household.
+   *
+   * @param callback Interface that accepts a {@link List} of {@link UserModel}s. Will be called
+   *     initially with current data. Will be called repeatedly with updates.
+   */
+  public void setUsersListener(final CallbackInterface<List<UserModel>> callback) {
+    if (callback == null) {
+      Log.w(TAG, "Callback is null -- setUsersListener");
+      return;
+    }
+
+    setUserChangesListener(changes -> callback.callback(changes == null ? null : changes.getAll()));
+  }
+
+  /**
+   * Same as {@link #setUsersListener(CallbackInterface)}, but each update also reports which users
+   * were added, modified or removed since the previous one.
+   *
+   * @param callback Interface that accepts a {@link ChangeSet} of {@link UserModel}s. Will be
+   *     called initially with current data. Will be called repeatedly with updates.
+   */
+  public void setUserChangesListener(final CallbackInterface<ChangeSet<UserModel>> callback) {
+    if (callback == null) {
+      Log.w(TAG, "Callback is null -- setUserChangesListener");
+      return;
+    }
+    if (mFirebaseUser == null) {
+      Log.w(TAG, "User is null, cannot listen on users");
+      callback.callback(null);
+      return;
+    }
+    if (mHousehold == null) {
+      Log.w(TAG, "User is not in household, cannot listen on users");
+      callback.callback(null);
+      return;
+    }
+    if (getUserCollection() == null) {
+      Log.w(TAG, "User collection is null, cannot listen on users");
+      callback.callback(null);
+    }
+
+    opSetUsersListener(callback);
+  }
+
+  /**
+   * Sets an event listener on the Tasks collection of the current household. Removes any previous
+   * listener for the Tasks collection. Sets and updates the local list of tasks. Requires the
+   * current user to exist AND be in household.
+   *
+   * @param callback Interface that accepts a {@link List} of {@link TaskModel}s. Will be called
+   *     initially with current data. Will be called repeatedly with updates.
+   */
+  public void setTasksListener(final CallbackInterface<List<TaskModel>> callback) {
+    if (callback == null) {
+      Log.w(TAG, "Callback is null -- setTasksListener");
+      return;
+    }
+
+    setTaskChangesListener(changes -> callback.callback(changes == null ? null : changes.getAll()));
+  }
+
+  /**
+   * Same as {@link #setTasksListener(CallbackInterface)}, but each update also reports which tasks
+   * were added, modified or removed since the previous one.
+   *
+   * @param callback Interface that accepts a {@link ChangeSet} of {@link TaskModel}s. Will be
+   *     called initially with current data. Will be called repeatedly with updates.
+   */
+  public void setTaskChangesListener(final CallbackInterface<ChangeSet<TaskModel>> callback) {
+    if (callback == null) {
+      Log.w(TAG, "Callback is null -- setTaskChangesListener");
+      return;
+    }
+    if (mFirebaseUser == null) {
+      Log.w(TAG, "User is null, cannot listen on tasks");
+      callback.callback(null);
+      return;
+    }
+    if (mHousehold == null) {
+      Log.w(TAG, "User is not in household, cannot listen on tasks");
+      callback.callback(null);
+      return;
+    }
+    if (getTaskCollection() == null) {
+      Log.w(TAG, "Task collection is null, cannot listen on tasks");
+      callback.callback(null);
+      return;
+    }
+
+    opSetTasksListener(callback);
+  }
+
+  /**
+   * Attaches a listener to the tasks assigned to the current user. Only those tasks are downloaded,
+   * the filtering is done by the query. Independent of the listener on all tasks. Requires the
+   * current user to exist AND be in household. Replaces the existing listener if there is one.
+   *
+   * @param callback Interface that accepts a list of {@link TaskModel}s. Will be called initially
+   *     with current data. Will be called repeatedly with updates.
+   */
+  public void setMyTasksListener(final CallbackInterface<List<TaskModel>> callback) {
+    if (callback == null) {
+      Log.w(TAG, "Callback is null -- setMyTasksListener");
+      return;
+    }
+
+    setMyTaskChangesListener(
+        changes -> callback.callback(changes == null ? null : changes.getAll()));
+  }
+
+  /**
+   * Same as {@link #setMyTasksListener(CallbackInterface)}, but each update also reports which
+   * tasks were added, modified or removed since the previous one. A task that is reassigned to
+   * someone else shows up as removed.
+   *
+   * @param callback Interface that accepts a {@link ChangeSet} of {@link TaskModel}s. Will be
+   *     called initially with current data. Will be called repeatedly with updates.
+   */
+  public void setMyTaskChangesListener(final CallbackInterface<ChangeSet<TaskModel>> callback) {
+    if (callback == null) {
+      Log.w(TAG, "Callback is null -- setMyTaskChangesListener");
+      return;
+    }
+    if (mFirebaseUser == null) {
+      Log.w(TAG, "User is null, cannot listen on my tasks");
+      callback.callback(null);
+      return;
+    }
+    if (mHousehold == null) {
+      Log.w(TAG, "User is not in household, cannot listen on my tasks");
+      callback.callback(null);
+      return;
+    }
+    if (getTaskCollection() == null) {
+      Log.w(TAG, "Task collection is null, cannot listen on my tasks");
+      callback.callback(null);
+      return;
+    }
+
+    opSetMyTasksListener(callback);
+  }
+
+  /**
+   * Opens a window over the tasks of the current household in priority order, loaded a page at a
+   * time, for households too large to mirror whole. Independent of the tasks listener. Requires the
+   * current user to exist AND be in household.
+   *
+   * @param pageSize How many tasks each page loads.
+   * @param maxPages Most pages kept at once, pages further away are released.
+   * @param callback Interface that accepts the read-only list of tasks in the window, on the main
+   *     thread. Called again whenever the window moves or its tasks change, null on failure.
+   * @return the window to move and close, or null on failure.
+   */
+  public TaskWindow openTaskWindow(
+      int pageSize, int maxPages, final CallbackInterface<List<TaskModel>> callback) {
+    if (callback == null) {
+      Log.w(TAG, "Callback is null -- openTaskWindow");
+      return null;
+    }
+    if (mFirebaseUser == null) {
+      Log.w(TAG, "User is null, cannot open task window");
+      callback.callback(null);
+      return null;
+    }
+    if (mHousehold == null) {
+      Log.w(TAG, "User is not in household, cannot open task window");
+      callback.callback(null);
+      return null;
+    }
+    if (getTaskCollection() == null) {
+      Log.w(TAG, "Task collection is null, cannot open task window");
+      callback.callback(null);
+      return null;
+    }
+
+    Log.d(TAG, "Opening task window of " + pageSize + " task pages");
+    TaskWindow window =
+        new TaskWindow(
+            getOrderedTasksQuery(getTaskCollection()),
+            this::buildTask,
+            TASK_ORDER,
+            mSnapshotExecutor,
+            pageSize,
+            maxPages,
+            callback);
+    window.open();
+    synchronized (mTaskWindows) {
+      mTaskWindows.add(window);
+    }
+    mPrefetcher.release(PREFETCH_TASK_WINDOW);
+    return window;
+  }
+
+  /* Async Methods */
+
+  /**
+   * Same as {@link #setCurrentUser(String, CallbackInterface)}, but returns a {@link Task}. Calls
+   * for a user while a call for the same user is in flight get the same task.
+   *
+   * @param firebaseId Firebase Id string of the currently authenticated user.
+   * @return a task with the newly set user, failed on failure or timeout.
+   */
+  public Task<UserModel> setCurrentUserAsync(final String firebaseId) {
+    return mAsyncCalls.call(
+        "setCurrentUser " + firebaseId,
+        mAsyncTimeoutMillis,
+        callback -> setCurrentUser(firebaseId, callback));
+  }
+
+  /**
+   * Same as {@link #setCurrentHousehold(String, CallbackInterface)}, but returns a {@link Task}.
+   * Calls for a household while a call for the same household is in flight get the same task.
+   *
+   * @param householdId Id string of the intended household to join.
+   * @return a task with the new household, failed on failure or timeout.
+   */
+  public Task<HouseholdModel> setCurrentHouseholdAsync(final String householdId) {
+    return mAsyncCalls.call(
+        "setCurrentHousehold " + householdId,
+        mAsyncTimeoutMillis,
+        callback -> setCurrentHousehold(householdId, callback));
+  }
+
+  /**
+   * Same as {@link #fetchTask(String, Source, CallbackInterface)}, but returns a {@link Task}.
+   * Calls for a task while a call for the same task and source is in flight get the same task.
+   *
+   * @param taskId Id of the task to read.
+   * @param source Where to read from, see {@link #setLookupSource(Source)}.
+   * @return a task with the task, failed if it does not exist, on failure or on timeout.
+   */
+  public Task<TaskModel> fetchTaskAsync(final String taskId, final Source source) {
+    return mAsyncCalls.call(
+        "fetchTask " + taskId + " " + source,
+        mAsyncTimeoutMillis,
+        callback -> fetchTask(taskId, source, callback));
+  }
+
+  /* Operations */
+
+  private void opCreateHousehold(
+      final HouseholdModel household, final CallbackInterface<HouseholdModel> callback) {
+    // Generate a new household doc and Id
     DocumentReference householdDoc = mFirestore.collection(HOUSEHOLD_COLLECTION_NAME).document();
     Log.d(TAG, "Making new household: " + householdDoc.getId());
     household.setHouseholdId(householdDoc.getId());
@@ -544,9 +1460,10 @@ public class ModelInterface {
     // Create a batch write to move the user from unassigned to the new household
     WriteBatch batch = mFirestore.batch();
     batch
-        .set(householdDoc, household)
-        .set(newDoc, mFirebaseUser)
+        .set(householdDoc, encodeHousehold(household))
+        .set(newDoc, encodeUser(mFirebaseUser))
         .delete(oldDoc)
+        .set(getDirectoryDoc(mFirebaseUser.getFirebaseId()), directoryEntry(householdDoc.getId()))
         .commit()
         .addOnCompleteListener(
             task -> {
@@ -563,7 +1480,91 @@ public class ModelInterface {
 
   private void opFindOrCreateUser(
       final String firebaseId, final CallbackInterface<UserModel> callback) {
+    // The directory says where the user is with a single read
+    mLoginRoundTrips.incrementAndGet();
+    getDirectoryDoc(firebaseId)
+        .get()
+        .addOnCompleteListener(
+            task -> {
+              if (!task.isSuccessful()) {
+                Log.w(TAG, "Failed to read user directory, searching: " + task.getException());
+                opSearchForUser(firebaseId, callback);
+              } else if (!task.getResult().exists()) {
+                // Users from before the directory, or new users
+                Log.d(TAG, "User not in directory, searching");
+                opSearchForUser(firebaseId, callback);
+              } else {
+                String householdId = task.getResult().getString(HOUSEHOLD_ID_FIELD);
+                if (householdId == null) {
+                  opLoadUnassignedUser(firebaseId, callback);
+                } else {
+                  opLoadHouseholdUser(firebaseId, householdId, callback);
+                }
+              }
+            });
+  }
+
+  private void opLoadHouseholdUser(
+      final String firebaseId,
+      final String householdId,
+      final CallbackInterface<UserModel> callback) {
+    final DocumentReference householdDoc =
+        mFirestore.collection(HOUSEHOLD_COLLECTION_NAME).document(householdId);
+
+    // Neither read needs the other, so the household is read alongside the user. It goes unused
+    // if the directory turns out to be wrong.
+    mLoginRoundTrips.incrementAndGet();
+    final Task<DocumentSnapshot> userRead =
+        householdDoc.collection(USERS_COLLECTION_NAME).document(firebaseId).get();
+    final Task<DocumentSnapshot> householdRead = lookup(householdDoc);
+
+    Tasks.whenAllComplete(userRead, householdRead)
+        .addOnCompleteListener(
+            all -> {
+              if (!userRead.isSuccessful() || !userRead.getResult().exists()) {
+                Log.w(TAG, "User not in directory household, searching");
+                opSearchForUser(firebaseId, callback);
+              } else if (!householdRead.isSuccessful()) {
+                Log.w(TAG, "Failed to get household ", householdRead.getException());
+                callback.callback(null);
+              } else {
+                Log.d(TAG, "Got user's household from directory: " + householdId);
+                // Clear existing data before setting current user
+                clearData();
+                mHousehold = buildHousehold(householdRead.getResult());
+                mFirebaseUser = buildUser(userRead.getResult());
+                callback.callback(getCurrentUser());
+              }
+            });
+  }
+
+  private void opLoadUnassignedUser(
+      final String firebaseId, final CallbackInterface<UserModel> callback) {
+    mLoginRoundTrips.incrementAndGet();
+    mFirestore
+        .collection(UNASSIGNED_USER_COLLECTION_NAME)
+        .document(firebaseId)
+        .get()
+        .addOnCompleteListener(
+            task -> {
+              if (task.isSuccessful() && task.getResult().exists()) {
+                Log.d(TAG, "User found in unassigned from directory");
+                // Clear existing data before setting current user
+                clearData();
+                mFirebaseUser = buildUser(task.getResult());
+                callback.callback(getCurrentUser());
+              } else {
+                Log.w(TAG, "User not in unassigned as the directory says, searching");
+                opSearchForUser(firebaseId, callback);
+              }
+            });
+  }
+
+  // Looks through every household and then unassigned, for users the directory does not know
+  private void opSearchForUser(
+      final String firebaseId, final CallbackInterface<UserModel> callback) {
     // First, search all households for the user
+    mLoginRoundTrips.incrementAndGet();
     mFirestore
         .collectionGroup(USERS_COLLECTION_NAME)
         .whereEqualTo(USER_ID_FIELD, firebaseId)
@@ -574,6 +1575,7 @@ public class ModelInterface {
                 Log.d(TAG, "User not found to be part of a household, checking unassigned");
 
                 // Search unassigned for the user
+                mLoginRoundTrips.incrementAndGet();
                 mFirestore
                     .collection(UNASSIGNED_USER_COLLECTION_NAME)
                     .whereEqualTo(USER_ID_FIELD, firebaseId)
@@ -584,32 +1586,12 @@ public class ModelInterface {
                             QuerySnapshot uSnapshot = task.getResult();
                             if (uSnapshot.isEmpty()) {
                               Log.d(TAG, "User not found in unassigned, creating new");
-                              // User does not exist, create one
-                              UserModel newUser = new UserModel();
-                              newUser.setFirebaseId(firebaseId);
-                              mFirestore
-                                  .collection(UNASSIGNED_USER_COLLECTION_NAME)
-                                  .document(firebaseId)
-                                  .set(newUser)
-                                  .addOnCompleteListener(
-                                      utask -> {
-                                        if (utask.isSuccessful()) {
-                                          Log.d(TAG, "Created new user");
-                                          // Clear existing data before setting current user
-                                          clearData();
-                                          mFirebaseUser = newUser;
-                                          callback.callback(getCurrentUser());
-                                        } else {
-                                          Log.w(
-                                              TAG, "Failed to create user: ", utask.getException());
-                                          callback.callback(null);
-                                        }
-                                      });
-
+                              opCreateUser(firebaseId, callback);
                             } else {
                               // Found the user, callback with it
                               logExcess("Unassigned User", task.getResult());
                               Log.w(TAG, "User found in unassigned");
+                              backfillDirectoryEntry(firebaseId, null);
                               // Clear existing data before setting current user
                               clearData();
                               mFirebaseUser = buildUser(task.getResult().getDocuments().get(0));
@@ -627,12 +1609,13 @@ public class ModelInterface {
                 // Get the household the user belongs to first, then use callback
                 DocumentSnapshot userDoc = snapshot.getDocuments().get(0);
                 DocumentReference household = userDoc.getReference().getParent().getParent();
-                household
-                    .get()
+                mLoginRoundTrips.incrementAndGet();
+                lookup(household)
                     .addOnCompleteListener(
                         task -> {
                           if (task.isSuccessful()) {
                             Log.w(TAG, "Got user's household: " + household.getId());
+                            backfillDirectoryEntry(firebaseId, household.getId());
                             // Clear existing data before setting current user
                             clearData();
                             mHousehold = buildHousehold(task.getResult());
@@ -652,15 +1635,175 @@ public class ModelInterface {
             });
   }
 
+  private void opCreateUser(final String firebaseId, final CallbackInterface<UserModel> callback) {
+    // User does not exist, create one
+    UserModel newUser = new UserModel();
+    newUser.setFirebaseId(firebaseId);
+    mLoginRoundTrips.incrementAndGet();
+    mFirestore
+        .batch()
+        .set(
+            mFirestore.collection(UNASSIGNED_USER_COLLECTION_NAME).document(firebaseId),
+            encodeUser(newUser))
+        .set(getDirectoryDoc(firebaseId), directoryEntry(null))
+        .commit()
+        .addOnCompleteListener(
+            utask -> {
+              if (utask.isSuccessful()) {
+                Log.d(TAG, "Created new user");
+                // Clear existing data before setting current user
+                clearData();
+                mFirebaseUser = newUser;
+                callback.callback(getCurrentUser());
+              } else {
+                Log.w(TAG, "Failed to create user: ", utask.getException());
+                callback.callback(null);
+              }
+            });
+  }
+
+  // Same result as opFindOrCreateUser, reads that do not depend on each other are sent together
+  private void opResolveUserInParallel(
+      final String firebaseId, final CallbackInterface<UserModel> callback) {
+    mLoginRoundTrips.incrementAndGet();
+    final Task<DocumentSnapshot> directoryRead = getDirectoryDoc(firebaseId).get();
+    // Unassigned is read alongside, in case that is where the user turns out to be
+    final Task<DocumentSnapshot> unassignedRead =
+        mFirestore.collection(UNASSIGNED_USER_COLLECTION_NAME).document(firebaseId).get();
+
+    directoryRead.addOnCompleteListener(
+        task -> {
+          final String householdId =
+              task.isSuccessful() && task.getResult().exists()
+                  ? task.getResult().getString(HOUSEHOLD_ID_FIELD)
+                  : null;
+
+          if (householdId == null) {
+            final boolean inDirectory = task.isSuccessful() && task.getResult().exists();
+            unassignedRead.addOnCompleteListener(
+                utask -> {
+                  if (utask.isSuccessful() && utask.getResult().exists()) {
+                    Log.d(TAG, "User found in unassigned");
+                    if (!inDirectory) {
+                      backfillDirectoryEntry(firebaseId, null);
+                    }
+                    // Clear existing data before setting current user
+                    clearData();
+                    mFirebaseUser = buildUser(utask.getResult());
+                    callback.callback(getCurrentUser());
+                  } else {
+                    Log.d(TAG, "User not in directory or unassigned, searching");
+                    opSearchForUserInParallel(firebaseId, callback);
+                  }
+                });
+            return;
+          }
+
+          // The household is known, start loading it while the user and household are read
+          prefetchHousehold(householdId, firebaseId);
+          mLoginRoundTrips.incrementAndGet();
+          final DocumentReference householdDoc =
+              mFirestore.collection(HOUSEHOLD_COLLECTION_NAME).document(householdId);
+          final Task<DocumentSnapshot> userRead =
+              householdDoc.collection(USERS_COLLECTION_NAME).document(firebaseId).get();
+          final Task<DocumentSnapshot> householdRead = lookup(householdDoc);
+
+          Tasks.whenAllComplete(userRead, householdRead)
+              .addOnCompleteListener(
+                  all -> {
+                    if (!userRead.isSuccessful() || !userRead.getResult().exists()) {
+                      Log.w(TAG, "User not in directory household, searching");
+                      mPrefetcher.releaseAll();
+                      opSearchForUserInParallel(firebaseId, callback);
+                    } else if (!householdRead.isSuccessful()) {
+                      Log.w(TAG, "Failed to get household ", householdRead.getException());
+                      mPrefetcher.releaseAll();
+                      callback.callback(null);
+                    } else {
+                      Log.d(TAG, "Got user's household from directory: " + householdId);
+                      // Clear existing data before setting current user
+                      clearData();
+                      mHousehold = buildHousehold(householdRead.getResult());
+                      mFirebaseUser = buildUser(userRead.getResult());
+                      callback.callback(getCurrentUser());
+                    }
+                  });
+        });
+  }
+
+  // Same as opSearchForUser, with the household and unassigned searches sent together
+  private void opSearchForUserInParallel(
+      final String firebaseId, final CallbackInterface<UserModel> callback) {
+    mLoginRoundTrips.incrementAndGet();
+    final Task<QuerySnapshot> householdSearch =
+        mFirestore
+            .collectionGroup(USERS_COLLECTION_NAME)
+            .whereEqualTo(USER_ID_FIELD, firebaseId)
+            .get();
+    final Task<QuerySnapshot> unassignedSearch =
+        mFirestore
+            .collection(UNASSIGNED_USER_COLLECTION_NAME)
+            .whereEqualTo(USER_ID_FIELD, firebaseId)
+            .get();
+
+    Tasks.whenAllComplete(householdSearch, unassignedSearch)
+        .addOnCompleteListener(
+            all -> {
+              if (householdSearch.isSuccessful() && !householdSearch.getResult().isEmpty()) {
+                logExcess("User", householdSearch.getResult());
+                final DocumentSnapshot userDoc = householdSearch.getResult().getDocuments().get(0);
+                final DocumentReference household = userDoc.getReference().getParent().getParent();
+                prefetchHousehold(household.getId(), firebaseId);
+                mLoginRoundTrips.incrementAndGet();
+                lookup(household)
+                    .addOnCompleteListener(
+                        task -> {
+                          if (task.isSuccessful()) {
+                            Log.d(TAG, "Got user's household: " + household.getId());
+                            backfillDirectoryEntry(firebaseId, household.getId());
+                            // Clear existing data before setting current user
+                            clearData();
+                            mHousehold = buildHousehold(task.getResult());
+                            mFirebaseUser = buildUser(userDoc);
+                            callback.callback(getCurrentUser());
+                          } else {
+                            Log.w(TAG, "Failed to get household ", task.getException());
+                            mPrefetcher.releaseAll();
+                            callback.callback(null);
+                          }
+                        });
+              } else if (!householdSearch.isSuccessful()) {
+                Log.w(TAG, "Failed to find user by id: ", householdSearch.getException());
+                callback.callback(null);
+              } else if (!unassignedSearch.isSuccessful()) {
+                Log.w(TAG, "Failed to search unassigned: ", unassignedSearch.getException());
+                callback.callback(null);
+              } else if (!unassignedSearch.getResult().isEmpty()) {
+                logExcess("Unassigned User", unassignedSearch.getResult());
+                Log.d(TAG, "User found in unassigned");
+                backfillDirectoryEntry(firebaseId, null);
+                // Clear existing data before setting current user
+                clearData();
+                mFirebaseUser = buildUser(unassignedSearch.getResult().getDocuments().get(0));
+                callback.callback(getCurrentUser());
+              } else {
+                Log.d(TAG, "User not found, creating new");
+                opCreateUser(firebaseId, callback);
+              }
+            });
+  }
+
   private void opFindAndSetHousehold(
       String householdId, final CallbackInterface<HouseholdModel> callback) {
 
     Log.d(TAG, "Attempting to set current household");
+    if (mParallelLookups) {
+      // Start loading the household while checking it exists, dropped if it does not
+      prefetchHousehold(householdId, mFirebaseUser.getFirebaseId());
+    }
+
     // Check that household exists first
-    mFirestore
-        .collection(HOUSEHOLD_COLLECTION_NAME)
-        .document(householdId)
-        .get()
+    lookup(mFirestore.collection(HOUSEHOLD_COLLECTION_NAME).document(householdId))
         .addOnCompleteListener(
             task -> {
               if (task.isSuccessful()) {
@@ -682,7 +1825,9 @@ public class ModelInterface {
                           .collection(UNASSIGNED_USER_COLLECTION_NAME)
                           .document(mFirebaseUser.getFirebaseId());
                   batch.delete(unassignedDoc);
-                  batch.set(moveToDoc, mFirebaseUser);
+                  batch.set(moveToDoc, encodeUser(mFirebaseUser));
+                  batch.set(
+                      getDirectoryDoc(mFirebaseUser.getFirebaseId()), directoryEntry(householdId));
                   batch
                       .commit()
                       .addOnCompleteListener(
@@ -702,10 +1847,12 @@ public class ModelInterface {
                           });
                 } else {
                   Log.w(TAG, "No household found with Id");
+                  mPrefetcher.releaseAll();
                   callback.callback(null);
                 }
               } else {
                 Log.w(TAG, "Failed to find household: " + task.getException());
+                mPrefetcher.releaseAll();
                 callback.callback(null);
               }
             });
@@ -716,12 +1863,13 @@ public class ModelInterface {
     mFirestore
         .collection(HOUSEHOLD_COLLECTION_NAME)
         .document(mHousehold.getHouseholdId())
-        .set(household)
+        .set(encodeHousehold(household))
         .addOnCompleteListener(
             task -> {
               if (task.isSuccessful()) {
                 Log.w(TAG, "Household updated successfully");
-                mHousehold = household;
+                // Copied, the caller keeps its own object
+                mHousehold = new HouseholdModel(household);
                 callback.callback(getHousehold());
               } else {
                 Log.w(TAG, "Failed to update household: " + task.getException());
@@ -734,14 +1882,12 @@ public class ModelInterface {
     Log.w(TAG, "Updating current user");
     getUserCollection()
         .document(mFirebaseUser.getFirebaseId())
-        .set(user)
+        .set(encodeUser(user))
         .addOnCompleteListener(
             task -> {
               if (task.isSuccessful()) {
                 Log.d(TAG, "User updated successfully");
-                UserModel newUser = new UserModel(user);
-                newUser.setFirebaseId(mFirebaseUser.getFirebaseId());
-                mFirebaseUser = newUser;
+                mFirebaseUser = user;
                 callback.callback(getCurrentUser());
               } else {
                 Log.w(TAG, "Failed to update user", task.getException());
@@ -761,133 +1907,495 @@ public class ModelInterface {
             .collection(UNASSIGNED_USER_COLLECTION_NAME)
             .document(mFirebaseUser.getFirebaseId());
     batch.delete(currentDoc);
-    batch.set(unassignedDoc, mFirebaseUser);
+    batch.set(unassignedDoc, encodeUser(mFirebaseUser));
+    batch.set(getDirectoryDoc(mFirebaseUser.getFirebaseId()), directoryEntry(null));
     batch
         .commit()
         .addOnCompleteListener(
             task -> {
               if (task.isSuccessful()) {
-                Log.d(TAG, "User removed successfully");
-                clearListeners(); // Important, user should not get updates from old household
-                clearHousehold(); // Data from current household is no longer needed
-                callback.callback(getCurrentUser());
+                Log.d(TAG, "User removed successfully");
+                clearListeners(); // Important, user should not get updates from old household
+                clearHousehold(); // Data from current household is no longer needed
+                callback.callback(getCurrentUser());
+              } else {
+                Log.w(TAG, "Failed to remove user: " + task.getException());
+                callback.callback(null);
+              }
+            });
+  }
+
+  private void opSetHouseholdListener(final CallbackInterface<HouseholdModel> callback) {
+    Log.w(TAG, "Setting listener on household");
+
+    removeHouseholdListener();
+    final int generation = mHouseholdGeneration;
+    final AtomicBoolean sent = new AtomicBoolean(false);
+    final AtomicReference<Map<String, Object>> lastData = new AtomicReference<>();
+
+    EventListener<DocumentSnapshot> listener =
+        (snapshot, e) -> {
+          if (generation != mHouseholdGeneration) {
+            return;
+          }
+          if (e != null || snapshot == null) {
+            Log.w(TAG, "Listen failed on household", e);
+            callback.callback(null);
+            return;
+          }
+
+          if (snapshot.exists()) {
+            // Same contents as the household last sent
+            Map<String, Object> data = snapshot.getData();
+            Map<String, Object> previous = lastData.getAndSet(data);
+            if (sent.getAndSet(true) && data != null && data.equals(previous)) {
+              mSuppressedEvents.incrementAndGet();
+              return;
+            }
+            HouseholdModel household = buildHousehold(snapshot);
+            synchronized (mHouseholdLock) {
+              if (generation != mHouseholdGeneration) {
+                return;
+              }
+              mHousehold = household;
+            }
+            Log.d(TAG, "Sending household update");
+            callback.callback(household);
+          } else {
+            callback.callback(null);
+          }
+        };
+
+    DocumentReference householdDoc =
+        mFirestore.collection(HOUSEHOLD_COLLECTION_NAME).document(mHousehold.getHouseholdId());
+    Executor executor = mSnapshotExecutor;
+    if (executor != null) {
+      mHouseholdListener = householdDoc.addSnapshotListener(executor, listener);
+    } else {
+      mHouseholdListener = householdDoc.addSnapshotListener(listener);
+    }
+    mPrefetcher.release(PREFETCH_HOUSEHOLD);
+  }
+
+  private void opSetUsersListener(final CallbackInterface<ChangeSet<UserModel>> callback) {
+    Log.w(TAG, "Setting listener on users");
+
+    removeUsersListener();
+    final int generation = mUsersGeneration;
+    final AtomicBoolean sent = new AtomicBoolean(false);
+    mUsers.resync();
+
+    mUsersListener =
+        listen(
+            getUserCollection(),
+            (snapshot, e) -> {
+              if (generation != mUsersGeneration) {
+                return;
+              }
+              if (e != null || snapshot == null) {
+                Log.w(TAG, "Listen failed on users", e);
+                callback.callback(null);
+                return;
+              }
+
+              // Only the documents that changed are rebuilt
+              ChangeSet<UserModel> changes;
+              synchronized (mUsers) {
+                if (generation != mUsersGeneration) {
+                  return;
+                }
+                changes = mUsers.apply(snapshot);
+              }
+              if (suppress(changes, sent)) {
+                return;
+              }
+              Log.d(TAG, "Sending users list update (" + changes.size() + " changed)");
+              callback.callback(changes);
+            });
+    mPrefetcher.release(PREFETCH_USERS);
+  }
+
+  private void opSetTasksListener(final CallbackInterface<ChangeSet<TaskModel>> callback) {
+    Log.w(TAG, "Setting listener on tasks");
+
+    removeTasksListener();
+    final int generation = mTasksGeneration;
+    final AtomicBoolean sent = new AtomicBoolean(false);
+    synchronized (mTasks) {
+      mTasks.setOrder(mOrderedTasks ? TASK_ORDER : null);
+      mTasks.resync();
+    }
+    mTaskChangesCallback = callback;
+
+    mTasksListener =
+        listen(
+            getTasksQuery(getTaskCollection()),
+            (snapshot, e) -> {
+              if (generation != mTasksGeneration) {
+                return;
+              }
+              if (e != null || snapshot == null) {
+                Log.w(TAG, "Listen failed on taskss", e);
+                callback.callback(null);
+                return;
+              }
+
+              // Only the documents that changed are rebuilt
+              ChangeSet<TaskModel> changes;
+              synchronized (mTasks) {
+                if (generation != mTasksGeneration) {
+                  return;
+                }
+                changes = mTasks.apply(snapshot);
+                indexTasks(changes);
+              }
+              if (suppress(changes, sent)) {
+                return;
+              }
+              Log.d(TAG, "Sending task list update (" + changes.size() + " changed)");
+              callback.callback(changes);
+            });
+  }
+
+  private void opSetMyTasksListener(final CallbackInterface<ChangeSet<TaskModel>> callback) {
+    Log.w(TAG, "Setting listener on my tasks");
+
+    removeMyTasksListener();
+    final int generation = mMyTasksGeneration;
+    final AtomicBoolean sent = new AtomicBoolean(false);
+    synchronized (mMyTasks) {
+      // Sorted locally, ordering the filtered query would need a composite index
+      mMyTasks.setOrder(mOrderedTasks ? TASK_ORDER : null);
+      mMyTasks.resync();
+    }
+    mMyTaskChangesCallback = callback;
+
+    mMyTasksListener =
+        listen(
+            getMyTasksQuery(mHousehold.getHouseholdId(), mFirebaseUser.getFirebaseId()),
+            (snapshot, e) -> {
+              if (generation != mMyTasksGeneration) {
+                return;
+              }
+              if (e != null || snapshot == null) {
+                Log.w(TAG, "Listen failed on my tasks", e);
+                callback.callback(null);
+                return;
+              }
+
+              ChangeSet<TaskModel> changes;
+              synchronized (mMyTasks) {
+                if (generation != mMyTasksGeneration) {
+                  return;
+                }
+                changes = mMyTasks.apply(snapshot);
+              }
+              if (suppress(changes, sent)) {
+                return;
+              }
+              Log.d(TAG, "Sending my task list update (" + changes.size() + " changed)");
+              callback.callback(changes);
+            });
+    mPrefetcher.release(PREFETCH_MY_TASKS);
+  }
+
+  private void opAddTask(final TaskModel taskData, final CallbackInterface<TaskModel> callback) {
+    final DocumentReference taskDoc = getTaskCollection().document();
+    // The caller's model is left alone, it may be shared
+    final TaskModel newTask = new TaskModel(taskData);
+    newTask.setTaskId(taskDoc.getId());
+    // Shared with readers of the tasks, the copy sent back belongs to the caller
+    final TaskModel localTask = new TaskModel(newTask);
+    applyLocalTask(taskDoc.getId(), current -> localTask);
+
+    taskDoc
+        .set(encodeTask(newTask))
+        .addOnCompleteListener(
+            task1 -> {
+              if (task1.isSuccessful()) {
+                Log.w(TAG, "Task added successfully");
+                callback.callback(newTask);
+              } else {
+                Log.w(TAG, "Failed to add task: " + task1.getException());
+                revertLocalTask(taskDoc.getId());
+                callback.callback(null);
+              }
+            });
+  }
+
+  private void opUpdateTask(final TaskModel taskData, final CallbackInterface<TaskModel> callback) {
+    final TaskModel localTask = new TaskModel(taskData);
+    applyLocalTask(taskData.getTaskId(), current -> current == null ? null : localTask);
+
+    // update() fails if the document does not exist, no need to look it up first. It only takes a
+    // field map, so the codec is used even when reflection is chosen, with the same field names.
+    getTaskCollection()
+        .document(taskData.getTaskId())
+        .update(TaskCodec.toMap(taskData))
+        .addOnCompleteListener(
+            task -> {
+              if (task.isSuccessful()) {
+                Log.d(TAG, "Task updated successfully");
+                callback.callback(taskData);
+              } else if (isNotFound(task.getException())) {
+                Log.w(TAG, "Task not found, not updating task");
+                revertLocalTask(taskData.getTaskId());
+                callback.callback(null);
+              } else {
+                Log.w(TAG, "Failed to update task: " + task.getException());
+                revertLocalTask(taskData.getTaskId());
+                callback.callback(null);
+              }
+            });
+  }
+
+  private void opUpdateTaskFields(
+      final String taskId,
+      final Map<String, Object> fields,
+      final CallbackInterface<String> callback) {
+    // Only the given fields are sent, update() fails if the task does not exist
+    getTaskCollection()
+        .document(taskId)
+        .update(fields)
+        .addOnCompleteListener(
+            task -> {
+              if (task.isSuccessful()) {
+                Log.d(TAG, "Task fields updated successfully: " + fields.keySet());
+                callback.callback(taskId);
+              } else if (isNotFound(task.getException())) {
+                Log.w(TAG, "Task not found, not updating task");
+                revertLocalTask(taskId);
+                callback.callback(null);
               } else {
-                Log.w(TAG, "Failed to remove user: " + task.getException());
+                Log.w(TAG, "Failed to update task fields: " + task.getException());
+                revertLocalTask(taskId);
                 callback.callback(null);
               }
             });
   }
 
-  private void opSetHouseholdListener(final CallbackInterface<HouseholdModel> callback) {
-    Log.w(TAG, "Setting listener on household");
+  private void opRemoveTask(final TaskModel taskData, final CallbackInterface<TaskModel> callback) {
+    final DocumentReference taskDoc = getTaskCollection().document(taskData.getTaskId());
+    // Sent back as the deleted task, the caller's copy stands in for tasks that aren't loaded
+    final TaskModel mirrored = findTask(taskData.getTaskId());
+    final TaskModel deletedTask = mirrored != null ? mirrored : new TaskModel(taskData);
+    applyLocalTask(taskData.getTaskId(), current -> null);
+
+    // The update fails if the task is missing, which fails the whole batch
+    commitTaskRemoval(
+            mFirestore
+                .batch()
+                .update(taskDoc, TaskCodec.TASK_ID, taskData.getTaskId())
+                .delete(taskDoc))
+        .addOnCompleteListener(
+            task -> {
+              if (task.isSuccessful()) {
+                Log.d(TAG, "Task deleted successfully");
+                callback.callback(deletedTask);
+              } else if (isNotFound(task.getException())) {
+                Log.w(TAG, "Task not found, not deleting task");
+                callback.callback(null);
+              } else {
+                Log.w(TAG, "Failed to delete task: " + task.getException());
+                revertLocalTask(taskData.getTaskId());
+                callback.callback(null);
+              }
+            });
+  }
 
-    if (mHouseholdListener != null) {
-      mHouseholdListener.remove();
+  private void opAddTasks(
+      final List<TaskModel> tasks, final CallbackInterface<List<TaskModel>> callback) {
+    final BatchWriter writer = newBatchWriter();
+    final Map<String, LocalTaskChange> localChanges = new LinkedHashMap<>();
+    final List<TaskModel> newTasks = new ArrayList<>();
+    for (final TaskModel taskData : tasks) {
+      final DocumentReference taskDoc = getTaskCollection().document();
+      // Copied like in opAddTask, the caller's models keep their ids
+      final TaskModel newTask = new TaskModel(taskData);
+      newTask.setTaskId(taskDoc.getId());
+      newTasks.add(newTask);
+      final TaskModel localTask = new TaskModel(newTask);
+      localChanges.put(taskDoc.getId(), current -> localTask);
+
+      final Object encoded = encodeTask(newTask);
+      writer.add(1, batch -> batch.set(taskDoc, encoded));
     }
+    applyLocalTasks(localChanges);
 
-    mHouseholdListener =
-        mFirestore
-            .collection(HOUSEHOLD_COLLECTION_NAME)
-            .document(mHousehold.getHouseholdId())
-            .addSnapshotListener(
-                (snapshot, e) -> {
-                  if (e != null || snapshot == null) {
-                    Log.w(TAG, "Listen failed on household", e);
-                    callback.callback(null);
-                    return;
-                  }
-
-                  if (snapshot.exists()) {
-                    Log.d(TAG, "Sending household update");
-                    mHousehold = buildHousehold(snapshot);
-                    callback.callback(buildHousehold(snapshot));
-                  } else {
-                    callback.callback(null);
-                  }
-                });
+    writer.commit(failures -> finishTaskBulk(newTasks, newTasks, failures, null, callback));
   }
 
-  private void opSetUsersListener(final CallbackInterface<List<UserModel>> callback) {
-    Log.w(TAG, "Setting listener on users");
-
-    if (mUsersListener != null) {
-      mUsersListener.remove();
+  private void opUpdateTasks(
+      final List<TaskModel> tasks, final CallbackInterface<List<TaskModel>> callback) {
+    final BatchWriter writer = newBatchWriter();
+    final Map<String, LocalTaskChange> localChanges = new LinkedHashMap<>();
+    for (final TaskModel taskData : tasks) {
+      final TaskModel localTask = new TaskModel(taskData);
+      localChanges.put(taskData.getTaskId(), current -> current == null ? null : localTask);
+
+      final DocumentReference taskDoc = getTaskCollection().document(taskData.getTaskId());
+      final Map<String, Object> fields = TaskCodec.toMap(taskData);
+      writer.add(1, batch -> batch.update(taskDoc, fields));
     }
+    applyLocalTasks(localChanges);
 
-    mUsersListener =
-        getUserCollection()
-            .addSnapshotListener(
-                (snapshot, e) -> {
-                  if (e != null || snapshot == null) {
-                    Log.w(TAG, "Listen failed on users", e);
-                    callback.callback(null);
-                    return;
-                  }
-
-                  Log.d(TAG, "Sending users list update");
-                  mUsers.clear();
-                  for (DocumentSnapshot doc : snapshot) {
-                    mUsers.add(buildUser(doc));
-                  }
-                  callback.callback(getUsers());
-                });
+    writer.commit(failures -> finishTaskBulk(tasks, tasks, failures, this::opUpdateTask, callback));
   }
 
-  private void opSetTasksListener(final CallbackInterface<List<TaskModel>> callback) {
-    Log.w(TAG, "Setting listener on tasks");
-
-    if (mTasksListener != null) {
-      mTasksListener.remove();
+  private void opRemoveTasks(
+      final List<TaskModel> tasks, final CallbackInterface<List<TaskModel>> callback) {
+    final BatchWriter writer = newBatchWriter();
+    final Map<String, LocalTaskChange> localChanges = new LinkedHashMap<>();
+    final List<TaskModel> deletedTasks = new ArrayList<>();
+    for (final TaskModel taskData : tasks) {
+      final String taskId = taskData.getTaskId();
+      final TaskModel mirrored = getTaskById(taskId);
+      deletedTasks.add(mirrored != null ? mirrored : new TaskModel(taskData));
+      localChanges.put(taskId, current -> null);
+
+      // The update fails if the task is missing, like in opRemoveTask
+      final DocumentReference taskDoc = getTaskCollection().document(taskId);
+      writer.add(2, batch -> batch.update(taskDoc, TaskCodec.TASK_ID, taskId).delete(taskDoc));
     }
+    applyLocalTasks(localChanges);
 
-    mTasksListener =
-        getTaskCollection()
-            .addSnapshotListener(
-                (snapshot, e) -> {
-                  if (e != null || snapshot == null) {
-                    Log.w(TAG, "Listen failed on taskss", e);
-                    callback.callback(null);
-                    return;
-                  }
-
-                  Log.d(TAG, "Sending task list update");
-                  mTasks.clear();
-                  for (DocumentSnapshot doc : snapshot) {
-                    mTasks.add(buildTask(doc));
-                  }
-                  callback.callback(getTasks());
-                });
+    writer.commit(
+        failures -> finishTaskBulk(tasks, deletedTasks, failures, this::opRemoveTask, callback));
   }
 
-  private void opAddTask(final TaskModel taskData, final CallbackInterface<TaskModel> callback) {
-    final DocumentReference taskDoc = getTaskCollection().document();
-    taskData.setTaskId(taskDoc.getId());
+  private void opArchiveCompletedTasks(
+      final long olderThanMillis, final CallbackInterface<List<TaskModel>> callback) {
+    final CollectionReference archive = getArchiveCollection();
+    final Timestamp cutoff =
+        new Timestamp(new Date(System.currentTimeMillis() - olderThanMillis));
 
-    taskDoc
-        .set(taskData)
+    // Tasks that are not completed have no completion date, so they never match
+    getTaskCollection()
+        .whereLessThan(TaskCodec.COMPLETED_DATE, cutoff)
+        .get()
         .addOnCompleteListener(
-            task1 -> {
-              if (task1.isSuccessful()) {
-                Log.w(TAG, "Task added successfully");
-                callback.callback(taskData);
-              } else {
-                Log.w(TAG, "Failed to add task: " + task1.getException());
+            task -> {
+              if (!task.isSuccessful() || task.getResult() == null) {
+                Log.w(TAG, "Failed to find tasks to archive: " + task.getException());
                 callback.callback(null);
+                return;
+              }
+
+              final List<DocumentSnapshot> found = task.getResult().getDocuments();
+              if (found.isEmpty()) {
+                callback.callback(new ArrayList<>());
+                return;
+              }
+              final List<TaskModel> archived = new ArrayList<>();
+              final int[] remaining = new int[] {found.size()};
+              for (final DocumentSnapshot document : found) {
+                archiveTask(
+                    document.getReference(),
+                    archive.document(document.getId()),
+                    cutoff,
+                    result -> {
+                      if (result != null) {
+                        archived.add(result);
+                      }
+                      remaining[0]--;
+                      if (remaining[0] == 0) {
+                        Log.d(
+                            TAG, "Archived " + archived.size() + " of " + found.size() + " tasks");
+                        callback.callback(archived);
+                      }
+                    });
               }
             });
   }
 
-  private void opUpdateTask(final TaskModel taskData, final CallbackInterface<TaskModel> callback) {
+  // Moves one task to the archive if it is still completed before the cutoff when the transaction
+  // runs. Calls back with the task, or null if it was left alone or the move failed.
+  private void archiveTask(
+      final DocumentReference taskDoc,
+      final DocumentReference archiveDoc,
+      final Timestamp cutoff,
+      final CallbackInterface<TaskModel> callback) {
+    mFirestore
+        .runTransaction(
+            transaction -> {
+              DocumentSnapshot snapshot = transaction.get(taskDoc);
+              // Reassigned or reopened tasks are not completed anymore
+              Timestamp completedDate = snapshot.getTimestamp(TaskCodec.COMPLETED_DATE);
+              if (!snapshot.exists()
+                  || !Boolean.TRUE.equals(snapshot.getBoolean(TaskCodec.COMPLETED))
+                  || completedDate == null
+                  || completedDate.compareTo(cutoff) >= 0) {
+                return null;
+              }
+              Map<String, Object> data = snapshot.getData();
+              data.put(ARCHIVED_DATE_FIELD, FieldValue.serverTimestamp());
+              transaction.set(archiveDoc, data);
+              transaction.delete(taskDoc);
+              return buildTask(snapshot);
+            })
+        .addOnCompleteListener(
+            task -> {
+              if (!task.isSuccessful()) {
+                Log.w(TAG, "Failed to archive task: " + task.getException());
+                callback.callback(null);
+              } else {
+                callback.callback(task.getResult());
+              }
+            });
+  }
+
+  // Builds the results of a bulk task write. A missing task fails every task in its batch, so
+  // those tasks are retried one at a time and only the missing ones fail.
+  private void finishTaskBulk(
+      final List<TaskModel> tasks,
+      final List<TaskModel> successes,
+      final List<Exception> failures,
+      final TaskOperation retry,
+      final CallbackInterface<List<TaskModel>> callback) {
+    final List<TaskModel> results = new ArrayList<>(Collections.nCopies(tasks.size(), null));
+    final List<Integer> retries = new ArrayList<>();
+    for (int i = 0; i < tasks.size(); i++) {
+      Exception failure = failures.get(i);
+      if (failure == null) {
+        results.set(i, successes.get(i));
+      } else if (retry != null && isNotFound(failure)) {
+        retries.add(i);
+      } else {
+        revertLocalTask(tasks.get(i).getTaskId());
+      }
+    }
+
+    Log.d(TAG, "Bulk task write: " + tasks.size() + " tasks, " + retries.size() + " retried");
+    if (retries.isEmpty()) {
+      callback.callback(results);
+      return;
+    }
+
+    final int[] remaining = new int[] {retries.size()};
+    for (final int i : retries) {
+      retry.run(
+          tasks.get(i),
+          task -> {
+            results.set(i, task);
+            remaining[0]--;
+            if (remaining[0] == 0) {
+              callback.callback(results);
+            }
+          });
+    }
+  }
+
+  private void opReadAndUpdateTask(
+      final TaskModel taskData, final CallbackInterface<TaskModel> callback) {
     final DocumentReference taskDoc = getTaskCollection().document(taskData.getTaskId());
 
-    taskDoc
-        .get()
+    lookup(taskDoc, taskCheckSource())
         .addOnCompleteListener(
             task -> {
               if (task.isSuccessful()) {
                 if (task.getResult().exists()) {
                   taskDoc
-                      .set(taskData)
+                      .set(encodeTask(taskData))
                       .addOnCompleteListener(
                           task1 -> {
                             if (task1.isSuccessful()) {
@@ -909,11 +2417,11 @@ public class ModelInterface {
             });
   }
 
-  private void opRemoveTask(final TaskModel taskData, final CallbackInterface<TaskModel> callback) {
+  private void opReadAndRemoveTask(
+      final TaskModel taskData, final CallbackInterface<TaskModel> callback) {
     final DocumentReference taskDoc = getTaskCollection().document(taskData.getTaskId());
 
-    taskDoc
-        .get()
+    lookup(taskDoc, taskCheckSource())
         .addOnCompleteListener(
             task -> {
               if (task.isSuccessful()) {
@@ -946,20 +2454,445 @@ public class ModelInterface {
 
   // Builds and returns a household object from the provided document snapshot
   private HouseholdModel buildHousehold(DocumentSnapshot householdData) {
-    if (householdData != null) return householdData.toObject(HouseholdModel.class);
-    return null;
+    if (householdData == null) return null;
+    if (mCodecsEnabled) {
+      return HouseholdCodec.fromDocument(householdData);
+    }
+    return householdData.toObject(HouseholdModel.class);
   }
 
   // Builds and returns a task object from document
   private TaskModel buildTask(DocumentSnapshot taskData) {
-    if (taskData != null) return taskData.toObject(TaskModel.class);
-    return null;
+    if (taskData == null) return null;
+    if (mCodecsEnabled) return TaskCodec.fromDocument(taskData);
+    return taskData.toObject(TaskModel.class);
   }
 
   // Builds and returns a user object from document
   private UserModel buildUser(DocumentSnapshot userData) {
-    if (userData != null) return userData.toObject(UserModel.class);
-    return null;
+    if (userData == null) return null;
+    if (mCodecsEnabled) return UserCodec.fromDocument(userData);
+    return userData.toObject(UserModel.class);
+  }
+
+  // Returns what to hand to set() for the model, a field map or the model itself for reflection
+  private Object encodeHousehold(HouseholdModel household) {
+    return mCodecsEnabled ? HouseholdCodec.toMap(household) : household;
+  }
+
+  private Object encodeTask(TaskModel task) {
+    return mCodecsEnabled ? TaskCodec.toMap(task) : task;
+  }
+
+  private Object encodeUser(UserModel user) {
+    return mCodecsEnabled ? UserCodec.toMap(user) : user;
+  }
+
+  // Last known value of a task from any listened to tasks, null if none has it
+  private TaskModel findTask(String taskId) {
+    TaskModel task = mTasks.get(taskId);
+    if (task == null) {
+      task = mMyTasks.get(taskId);
+    }
+    if (task == null) {
+      for (TaskWindow window : openTaskWindows()) {
+        task = window.get(taskId);
+        if (task != null) {
+          break;
+        }
+      }
+    }
+    return task;
+  }
+
+  // Tasks assigned to a user from the current user's tasks and the task windows, in that order
+  private List<TaskModel> findTasksAssignedTo(String firebaseId) {
+    Map<String, TaskModel> found = new LinkedHashMap<>();
+    UserModel user = mFirebaseUser;
+    if (mMyTaskChangesCallback != null
+        && user != null
+        && firebaseId != null
+        && firebaseId.equals(user.getFirebaseId())) {
+      for (TaskModel task : mMyTasks.snapshot()) {
+        found.put(task.getTaskId(), task);
+      }
+    }
+    for (TaskWindow window : openTaskWindows()) {
+      for (TaskModel task : window.getAssignedTo(firebaseId)) {
+        if (!found.containsKey(task.getTaskId())) {
+          found.put(task.getTaskId(), task);
+        }
+      }
+    }
+    return new ArrayList<>(found.values());
+  }
+
+  // Task windows that are still open, closed ones are forgotten
+  private List<TaskWindow> openTaskWindows() {
+    synchronized (mTaskWindows) {
+      Iterator<TaskWindow> windows = mTaskWindows.iterator();
+      while (windows.hasNext()) {
+        if (windows.next().isClosed()) {
+          windows.remove();
+        }
+      }
+      return new ArrayList<>(mTaskWindows);
+    }
+  }
+
+  // Moves changed tasks to the right assignee bucket
+  private void indexTasks(ChangeSet<TaskModel> changes) {
+    for (TaskModel task : changes.getRemoved()) {
+      unindexTask(task.getTaskId());
+    }
+    for (TaskModel task : changes.getModified()) {
+      unindexTask(task.getTaskId());
+      indexTask(task);
+    }
+    for (TaskModel task : changes.getAdded()) {
+      indexTask(task);
+    }
+  }
+
+  private void indexTask(TaskModel task) {
+    Map<String, TaskModel> assigned = mTasksByAssignee.get(task.getAssignedTo());
+    if (assigned == null) {
+      assigned = new HashMap<>();
+      mTasksByAssignee.put(task.getAssignedTo(), assigned);
+    }
+    assigned.put(task.getTaskId(), task);
+    mAssigneeByTask.put(task.getTaskId(), task.getAssignedTo());
+  }
+
+  private void unindexTask(String taskId) {
+    if (!mAssigneeByTask.containsKey(taskId)) {
+      return;
+    }
+    String assignee = mAssigneeByTask.remove(taskId);
+    Map<String, TaskModel> assigned = mTasksByAssignee.get(assignee);
+    if (assigned != null) {
+      assigned.remove(taskId);
+      if (assigned.isEmpty()) {
+        mTasksByAssignee.remove(assignee);
+      }
+    }
+  }
+
+  // True for a snapshot that changed nothing, after the first one of a listener was sent
+  private boolean suppress(ChangeSet<?> changes, AtomicBoolean sent) {
+    if (changes.isEmpty() && sent.get()) {
+      mSuppressedEvents.incrementAndGet();
+      return true;
+    }
+    sent.set(true);
+    return false;
+  }
+
+  // Attaches a snapshot listener on the snapshot executor, or the main thread if there isn't one
+  private ListenerRegistration listen(Query query, EventListener<QuerySnapshot> listener) {
+    Executor executor = mSnapshotExecutor;
+    if (executor != null) {
+      return query.addSnapshotListener(executor, listener);
+    }
+    return query.addSnapshotListener(listener);
+  }
+
+  /** Computes the new local value of a task from the current one, null to remove it */
+  interface LocalTaskChange {
+    TaskModel apply(TaskModel current);
+  }
+
+  // Changes the local copy of a task ahead of the server and tells the task listeners and windows.
+  // Runs on the snapshot executor so it stays in order with snapshots.
+  private void applyLocalTask(final String taskId, final LocalTaskChange change) {
+    Map<String, LocalTaskChange> changes = new HashMap<>();
+    changes.put(taskId, change);
+    applyLocalTasks(changes);
+  }
+
+  // Same as applyLocalTask for several tasks, each listener and window is told once
+  private void applyLocalTasks(final Map<String, LocalTaskChange> taskChanges) {
+    if (!mOptimisticWrites || taskChanges.isEmpty()) {
+      return;
+    }
+
+    final CallbackInterface<ChangeSet<TaskModel>> tasksCallback = mTaskChangesCallback;
+    final CallbackInterface<ChangeSet<TaskModel>> myTasksCallback = mMyTaskChangesCallback;
+    final int tasksGeneration = mTasksGeneration;
+    final int myTasksGeneration = mMyTasksGeneration;
+    final List<TaskWindow> windows = openTaskWindows();
+    runOnSnapshotThread(
+        () -> {
+          // Before the tasks, which the current user's tasks can fall back on
+          if (myTasksCallback != null) {
+            applyLocalMyTasks(taskChanges, myTasksCallback, myTasksGeneration);
+          }
+          if (tasksCallback != null) {
+            applyLocalAllTasks(taskChanges, tasksCallback, tasksGeneration);
+          }
+          for (TaskWindow window : windows) {
+            window.applyLocal(taskChanges);
+          }
+        });
+  }
+
+  private void applyLocalAllTasks(
+      Map<String, LocalTaskChange> taskChanges,
+      CallbackInterface<ChangeSet<TaskModel>> callback,
+      int generation) {
+    ChangeSet<TaskModel> changes;
+    synchronized (mTasks) {
+      if (generation != mTasksGeneration) {
+        return;
+      }
+      Map<String, TaskModel> updates = new LinkedHashMap<>();
+      for (Map.Entry<String, LocalTaskChange> entry : taskChanges.entrySet()) {
+        updates.put(entry.getKey(), entry.getValue().apply(mTasks.get(entry.getKey())));
+      }
+      changes = mTasks.putAll(updates);
+      indexTasks(changes);
+    }
+    if (!changes.isEmpty()) {
+      Log.d(TAG, "Sending local task update (" + changes.size() + " changed)");
+      callback.callback(changes);
+    }
+  }
+
+  // Tasks that end up assigned to someone else leave the current user's tasks
+  private void applyLocalMyTasks(
+      Map<String, LocalTaskChange> taskChanges,
+      CallbackInterface<ChangeSet<TaskModel>> callback,
+      int generation) {
+    UserModel user = mFirebaseUser;
+    String userId = user == null ? null : user.getFirebaseId();
+    ChangeSet<TaskModel> changes;
+    synchronized (mMyTasks) {
+      if (generation != mMyTasksGeneration) {
+        return;
+      }
+      Map<String, TaskModel> updates = new LinkedHashMap<>();
+      for (Map.Entry<String, LocalTaskChange> entry : taskChanges.entrySet()) {
+        TaskModel current = mMyTasks.get(entry.getKey());
+        if (current == null) {
+          // Tasks assigned to the user by the change are only known to the other tasks
+          current = mTasks.get(entry.getKey());
+        }
+        TaskModel updated = entry.getValue().apply(current);
+        boolean mine = updated != null && userId != null && userId.equals(updated.getAssignedTo());
+        updates.put(entry.getKey(), mine ? updated : null);
+      }
+      changes = mMyTasks.putAll(updates);
+    }
+    if (!changes.isEmpty()) {
+      Log.d(TAG, "Sending local my task update (" + changes.size() + " changed)");
+      callback.callback(changes);
+    }
+  }
+
+  // Commits the batch removing a task, unless a test asked for the removal to fail
+  private Task<Void> commitTaskRemoval(WriteBatch batch) {
+    Exception failure = mNextRemovalFailure.getAndSet(null);
+    return failure != null ? Tasks.forException(failure) : batch.commit();
+  }
+
+  /**
+   * Makes the next single task removal fail with the given exception without writing anything, so
+   * tests can check what happens when a delete fails for reasons the emulator can't reproduce.
+   */
+  void failNextTaskRemoval(Exception failure) {
+    mNextRemovalFailure.set(failure);
+  }
+
+  // Undoes local changes to a task after a failed write by reading what is actually stored
+  private void revertLocalTask(final String taskId) {
+    if (!mOptimisticWrites || getTaskCollection() == null) {
+      return;
+    }
+    Log.d(TAG, "Rolling back local changes to task " + taskId);
+    getTaskCollection()
+        .document(taskId)
+        .get()
+        .addOnCompleteListener(
+            task -> {
+              if (task.isSuccessful()) {
+                final DocumentSnapshot snapshot = task.getResult();
+                applyLocalTask(taskId, current -> snapshot.exists() ? buildTask(snapshot) : null);
+              } else {
+                Log.w(TAG, "Failed to read task for rollback: " + task.getException());
+              }
+            });
+  }
+
+  private Task<DocumentSnapshot> lookup(DocumentReference document) {
+    return lookup(document, mLookupSource);
+  }
+
+  // Where to check a task exists before a write, the server unless offline or told to ask it only
+  private Source taskCheckSource() {
+    Source source = mLookupSource;
+    return source == Source.CACHE ? Source.DEFAULT : source;
+  }
+
+  // Reads a document from the given source. For the cache, documents that are not there or that the
+  // cache thinks are missing are read again from the server, which may know better.
+  private Task<DocumentSnapshot> lookup(final DocumentReference document, Source source) {
+    if (source != Source.CACHE) {
+      return document.get(source);
+    }
+
+    return document
+        .get(Source.CACHE)
+        .continueWithTask(
+            task -> {
+              if (task.isSuccessful() && task.getResult().exists()) {
+                mCacheHits.incrementAndGet();
+                return task;
+              }
+              mCacheMisses.incrementAndGet();
+              return document.get(Source.DEFAULT);
+            });
+  }
+
+  private void runOnSnapshotThread(Runnable runnable) {
+    Executor executor = mSnapshotExecutor;
+    if (executor != null) {
+      executor.execute(runnable);
+    } else {
+      runnable.run();
+    }
+  }
+
+  /** Writes one task, like opUpdateTask */
+  private interface TaskOperation {
+    void run(TaskModel task, CallbackInterface<TaskModel> callback);
+  }
+
+  /** Writes a list of tasks that have been checked, like opUpdateTasks */
+  private interface TaskBulkOperation {
+    void run(List<TaskModel> tasks, CallbackInterface<List<TaskModel>> callback);
+  }
+
+  // Checks what every bulk task operation needs
+  private boolean canWriteTasks(List<TaskModel> tasks, String action) {
+    if (mFirebaseUser == null) {
+      Log.w(TAG, "User is null, cannot " + action);
+      return false;
+    }
+    if (mHousehold == null) {
+      Log.w(TAG, "User is not in household, cannot " + action);
+      return false;
+    }
+    if (getTaskCollection() == null) {
+      Log.w(TAG, "No tasks collection, cannot " + action);
+      return false;
+    }
+    if (tasks == null) {
+      Log.w(TAG, "Task list is null, cannot " + action);
+      return false;
+    }
+    return true;
+  }
+
+  // Runs a bulk operation on the tasks that can be written, the rest come back as null
+  private void runTaskBulk(
+      final List<TaskModel> tasks,
+      final boolean needsId,
+      final TaskBulkOperation operation,
+      final CallbackInterface<List<TaskModel>> callback) {
+    final List<TaskModel> valid = new ArrayList<>();
+    final List<Integer> positions = new ArrayList<>();
+    for (int i = 0; i < tasks.size(); i++) {
+      TaskModel task = tasks.get(i);
+      if (task == null || (needsId && task.getTaskId() == null)) {
+        Log.w(TAG, "Task or task id is null, skipping task " + i);
+      } else {
+        valid.add(task);
+        positions.add(i);
+      }
+    }
+
+    if (valid.isEmpty()) {
+      callback.callback(new ArrayList<>(Collections.nCopies(tasks.size(), null)));
+      return;
+    }
+
+    operation.run(
+        valid,
+        written -> {
+          List<TaskModel> results = new ArrayList<>(Collections.nCopies(tasks.size(), null));
+          for (int i = 0; i < positions.size(); i++) {
+            results.set(positions.get(i), written.get(i));
+          }
+          callback.callback(results);
+        });
+  }
+
+  private BatchWriter newBatchWriter() {
+    return new BatchWriter(mFirestore, MAX_BATCH_OPERATIONS, MAX_BATCHES_IN_FLIGHT);
+  }
+
+  // Whether a write failed because its document does not exist
+  private static boolean isNotFound(Exception e) {
+    return e instanceof FirebaseFirestoreException
+        && ((FirebaseFirestoreException) e).getCode() == FirebaseFirestoreException.Code.NOT_FOUND;
+  }
+
+  // Starts listening to what the listeners of a household will ask for
+  private void prefetchHousehold(String householdId, String firebaseId) {
+    Log.d(TAG, "Prefetching household " + householdId);
+    DocumentReference householdDoc =
+        mFirestore.collection(HOUSEHOLD_COLLECTION_NAME).document(householdId);
+    mPrefetcher.releaseAll();
+    mPrefetcher.prefetch(PREFETCH_HOUSEHOLD, householdDoc);
+    // Only the first page of tasks, a whole large household would be too much to load up front
+    mPrefetcher.prefetch(
+        PREFETCH_TASK_WINDOW,
+        getOrderedTasksQuery(householdDoc.collection(TASK_COLLECTION_NAME))
+            .limit(TASK_WINDOW_PAGE_SIZE));
+    mPrefetcher.prefetch(PREFETCH_USERS, householdDoc.collection(USERS_COLLECTION_NAME));
+    mPrefetcher.prefetch(PREFETCH_MY_TASKS, getMyTasksQuery(householdId, firebaseId));
+  }
+
+  // Every task of a household, by priority when tasks are ordered
+  private Query getTasksQuery(CollectionReference tasks) {
+    return mOrderedTasks ? getOrderedTasksQuery(tasks) : tasks;
+  }
+
+  // Matches TASK_ORDER
+  private static Query getOrderedTasksQuery(CollectionReference tasks) {
+    return tasks.orderBy(TaskCodec.PRIORITY).orderBy(FieldPath.documentId());
+  }
+
+  // Tasks of a household assigned to one user
+  private Query getMyTasksQuery(String householdId, String firebaseId) {
+    return mFirestore
+        .collection(HOUSEHOLD_COLLECTION_NAME)
+        .document(householdId)
+        .collection(TASK_COLLECTION_NAME)
+        .whereEqualTo(TaskCodec.ASSIGNED_TO, firebaseId);
+  }
+
+  private DocumentReference getDirectoryDoc(String firebaseId) {
+    return mFirestore.collection(USER_DIRECTORY_COLLECTION_NAME).document(firebaseId);
+  }
+
+  // Directory entries only hold the household of the user, null while unassigned
+  private static Map<String, Object> directoryEntry(String householdId) {
+    Map<String, Object> entry = new HashMap<>();
+    entry.put(HOUSEHOLD_ID_FIELD, householdId);
+    return entry;
+  }
+
+  // Adds a user found by searching to the directory, so the next login is a single read
+  private void backfillDirectoryEntry(String firebaseId, String householdId) {
+    getDirectoryDoc(firebaseId)
+        .set(directoryEntry(householdId))
+        .addOnCompleteListener(
+            task -> {
+              if (!task.isSuccessful()) {
+                Log.w(TAG, "Failed to add user to directory: " + task.getException());
+              }
+            });
   }
 
   private CollectionReference getTaskCollection() {
@@ -972,6 +2905,16 @@ public class ModelInterface {
     return null;
   }
 
+  private CollectionReference getArchiveCollection() {
+    if (mHousehold != null && mHousehold.getHouseholdId() != null) {
+      return mFirestore
+          .collection(HOUSEHOLD_COLLECTION_NAME)
+          .document(mHousehold.getHouseholdId())
+          .collection(ARCHIVE_COLLECTION_NAME);
+    }
+    return null;
+  }
+
   private CollectionReference getUserCollection() {
     if (mHousehold != null && mHousehold.getHouseholdId() != null) {
       return mFirestore
@@ -986,25 +2929,26 @@ public class ModelInterface {
   // Remove listeners if they exist
   private void clearListeners() {
     Log.d(TAG, "Clearing listeners");
-    if (mHouseholdListener != null) {
-      mHouseholdListener.remove();
-      mHouseholdListener = null;
-    }
-    if (mTasksListener != null) {
-      mTasksListener.remove();
-      mTasksListener = null;
-    }
-    if (mUsersListener != null) {
-      mUsersListener.remove();
-      mUsersListener = null;
-    }
+    removeHouseholdListener();
+    removeTasksListener();
+    removeMyTasksListener();
+    removeUsersListener();
   }
 
   private void clearHousehold() {
     Log.d(TAG, "Clearing household data");
-    mHousehold = null;
+    // Send what is waiting while the household is still known
+    mTaskWrites.flush();
+    synchronized (mHouseholdLock) {
+      mHousehold = null;
+    }
     mUsers.clear();
-    mTasks.clear();
+    mMyTasks.clear();
+    synchronized (mTasks) {
+      mTasks.clear();
+      mTasksByAssignee.clear();
+      mAssigneeByTask.clear();
+    }
   }
 
   // Removes all local data and references for the current household
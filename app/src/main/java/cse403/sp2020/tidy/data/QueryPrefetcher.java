@@ -0,0 +1,86 @@
+package cse403.sp2020.tidy.data;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.Query;
+
+/**
+ * Starts listening to queries before their real listeners are attached, so the first results are
+ * already on their way while other lookups finish. Firestore shares one listen target between
+ * listeners on the same query, so the real listener gets those results without another round trip.
+ * A prefetch is released once the real listener is attached, or when the timeout runs out.
+ */
+class QueryPrefetcher {
+  // Log info
+  private static final String TAG = "QueryPrefetcher";
+
+  private final Map<String, ListenerRegistration> mRegistrations;
+  private final Handler mHandler;
+  private final Runnable mReleaseAll;
+  private final long mTimeoutMillis;
+
+  /** @param timeoutMillis How long prefetches wait for their real listeners. */
+  QueryPrefetcher(long timeoutMillis) {
+    mRegistrations = new HashMap<>();
+    mHandler = new Handler(Looper.getMainLooper());
+    mReleaseAll = this::releaseAll;
+    mTimeoutMillis = timeoutMillis;
+  }
+
+  /**
+   * Starts listening to a query, replacing an earlier prefetch under the same key.
+   *
+   * @param key Name of the listener that will take over, used to release it.
+   * @param query Query the real listener will use.
+   */
+  synchronized void prefetch(String key, Query query) {
+    release(key);
+    mRegistrations.put(key, query.addSnapshotListener((snapshot, e) -> logFailure(key, e)));
+    restartTimeout();
+  }
+
+  /** Same as {@link #prefetch(String, Query)} for a single document */
+  synchronized void prefetch(String key, DocumentReference document) {
+    release(key);
+    mRegistrations.put(key, document.addSnapshotListener((snapshot, e) -> logFailure(key, e)));
+    restartTimeout();
+  }
+
+  /** Stops the prefetch under a key, call after the real listener is attached */
+  synchronized void release(String key) {
+    ListenerRegistration registration = mRegistrations.remove(key);
+    if (registration != null) {
+      registration.remove();
+    }
+  }
+
+  /** Stops every prefetch */
+  synchronized void releaseAll() {
+    mHandler.removeCallbacks(mReleaseAll);
+    if (!mRegistrations.isEmpty()) {
+      Log.d(TAG, "Releasing " + mRegistrations.size() + " prefetched queries");
+    }
+    for (ListenerRegistration registration : mRegistrations.values()) {
+      registration.remove();
+    }
+    mRegistrations.clear();
+  }
+
+  private void restartTimeout() {
+    mHandler.removeCallbacks(mReleaseAll);
+    mHandler.postDelayed(mReleaseAll, mTimeoutMillis);
+  }
+
+  private static void logFailure(String key, Exception e) {
+    if (e != null) {
+      Log.w(TAG, "Prefetch failed for " + key, e);
+    }
+  }
+}
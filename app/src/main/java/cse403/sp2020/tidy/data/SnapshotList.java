@@ -0,0 +1,38 @@
+package cse403.sp2020.tidy.data;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+/**
+ * Read-only list of the contents of a mirrored collection at one point in time. A new snapshot is
+ * built once per listener event and then shared by every reader, so callers never need to copy it.
+ * Any attempt to modify the list throws {@link UnsupportedOperationException}.
+ *
+ * @param <T> Model type held by the list, items are shared as well and must not be changed
+ */
+public final class SnapshotList<T> extends AbstractList<T> implements RandomAccess {
+  private final Object[] mItems;
+  private final long mVersion;
+
+  SnapshotList(Collection<? extends T> items, long version) {
+    mItems = items.toArray();
+    mVersion = version;
+  }
+
+  /** @return a number that increases every time the mirrored collection changes */
+  public long getVersion() {
+    return mVersion;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public T get(int index) {
+    return (T) mItems[index];
+  }
+
+  @Override
+  public int size() {
+    return mItems.length;
+  }
+}
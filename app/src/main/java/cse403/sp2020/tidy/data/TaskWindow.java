@@ -0,0 +1,366 @@
+package cse403.sp2020.tidy.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.google.firebase.firestore.EventListener;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+import cse403.sp2020.tidy.data.codec.TaskCodec;
+import cse403.sp2020.tidy.data.model.TaskModel;
+
+/**
+ * A window over the tasks of a household in priority order, loaded a page at a time so that only
+ * the part being looked at is downloaded and kept in memory.
+ *
+ * <p>Every page has its own listener. The last page is a {@code limit} query. When the window moves
+ * past it, its last task becomes the end of the page and the next page starts after it, so pages
+ * never overlap or leave gaps between them, even as tasks are added or removed. A page can grow
+ * past the page size if many tasks land in its range.
+ *
+ * <p>At most a fixed number of pages are listened to. Moving the window forward releases pages at
+ * the front and moving it back releases pages at the end. Only the cursor of each page is kept
+ * after it is released, so it can be listened to again.
+ *
+ * <p>Opened with {@link ModelInterface#openTaskWindow}. Methods are called from the main thread
+ * and the callback is called on it.
+ */
+public class TaskWindow {
+  // Log info
+  private static final String TAG = "TaskWindow";
+
+  // One page of the window, replaced when it is listened to again
+  private static class Page {
+    private final int mIndex;
+    private final DocumentMirror<TaskModel> mTasks;
+    private ListenerRegistration mListener;
+    private boolean mLoaded;
+
+    private Page(int index, DocumentMirror<TaskModel> tasks) {
+      mIndex = index;
+      mTasks = tasks;
+      mListener = null;
+      mLoaded = false;
+    }
+  }
+
+  private final Query mQuery;
+  private final DocumentMirror.Parser<TaskModel> mParser;
+  private final Comparator<TaskModel> mOrder;
+  private final Executor mExecutor;
+  private final int mPageSize;
+  private final int mMaxPages;
+  private final CallbackInterface<List<TaskModel>> mCallback;
+  private final Handler mHandler;
+
+  // Values of the order fields of the last task of every page before the last one
+  private final List<Object[]> mPageEnds;
+
+  // Pages being listened to, in order
+  private final List<Page> mPages;
+  private boolean mClosed;
+
+  /**
+   * @param query Tasks ordered by priority and then document id.
+   * @param parser Converts task documents.
+   * @param order Same order as the query, used to keep each page in order.
+   * @param executor Where snapshots are processed, null for the main thread.
+   * @param pageSize How many tasks a new page asks for.
+   * @param maxPages Most pages listened to at once.
+   * @param callback Interface that accepts the tasks of the window.
+   */
+  TaskWindow(
+      Query query,
+      DocumentMirror.Parser<TaskModel> parser,
+      Comparator<TaskModel> order,
+      Executor executor,
+      int pageSize,
+      int maxPages,
+      CallbackInterface<List<TaskModel>> callback) {
+    mQuery = query;
+    mParser = parser;
+    mOrder = order;
+    mExecutor = executor;
+    mPageSize = Math.max(1, pageSize);
+    mMaxPages = Math.max(2, maxPages);
+    mCallback = callback;
+    mHandler = new Handler(Looper.getMainLooper());
+    mPageEnds = new ArrayList<>();
+    mPages = new ArrayList<>();
+    mClosed = false;
+  }
+
+  /** Starts listening to the first page */
+  synchronized void open() {
+    mPages.add(attach(new Page(0, newMirror())));
+  }
+
+  /**
+   * Moves the window forward by a page, releasing the first page if the window is full. Does
+   * nothing until the last page has loaded, or if it was the end of the tasks.
+   */
+  public synchronized void extendForward() {
+    if (mClosed) {
+      return;
+    }
+    Page last = mPages.get(mPages.size() - 1);
+    if (!last.mLoaded) {
+      return;
+    }
+
+    int next = last.mIndex + 1;
+    if (next > mPageEnds.size()) {
+      // The last page is the limit query, a short page means there is nothing after it
+      List<TaskModel> tasks = last.mTasks.snapshot();
+      if (tasks.size() < mPageSize) {
+        return;
+      }
+      TaskModel end = tasks.get(tasks.size() - 1);
+      mPageEnds.add(new Object[] {end.getPriority(), end.getTaskId()});
+
+      // Listen to it again with its end fixed, so tasks added to it are not pushed out
+      detach(last);
+      Page fixed = new Page(last.mIndex, last.mTasks);
+      fixed.mLoaded = true;
+      mPages.set(mPages.size() - 1, attach(fixed));
+    }
+
+    Log.d(TAG, "Adding page " + next);
+    mPages.add(attach(new Page(next, newMirror())));
+    while (mPages.size() > mMaxPages) {
+      Page released = mPages.remove(0);
+      Log.d(TAG, "Releasing page " + released.mIndex);
+      detach(released);
+    }
+    deliver();
+  }
+
+  /**
+   * Moves the window back by a page, releasing the last page if the window is full. Does nothing
+   * until the first page has loaded, or if it is the start of the tasks.
+   */
+  public synchronized void extendBackward() {
+    if (mClosed) {
+      return;
+    }
+    Page first = mPages.get(0);
+    if (!first.mLoaded || first.mIndex == 0) {
+      return;
+    }
+
+    Log.d(TAG, "Adding page " + (first.mIndex - 1));
+    mPages.add(0, attach(new Page(first.mIndex - 1, newMirror())));
+    while (mPages.size() > mMaxPages) {
+      Page released = mPages.remove(mPages.size() - 1);
+      Log.d(TAG, "Releasing page " + released.mIndex);
+      detach(released);
+    }
+    deliver();
+  }
+
+  /** Stops every listener of the window, the callback is not called again */
+  public synchronized void close() {
+    mClosed = true;
+    for (Page page : mPages) {
+      detach(page);
+    }
+    mPages.clear();
+    mHandler.removeCallbacksAndMessages(null);
+  }
+
+  /** @return true once the window has been closed */
+  public synchronized boolean isClosed() {
+    return mClosed;
+  }
+
+  /** @return the task with the given id if the window holds it, or null */
+  synchronized TaskModel get(String taskId) {
+    for (Page page : mPages) {
+      TaskModel task = page.mTasks.get(taskId);
+      if (task != null) {
+        return task;
+      }
+    }
+    return null;
+  }
+
+  /** @return the tasks in the window assigned to the given user, in order */
+  synchronized List<TaskModel> getAssignedTo(String firebaseId) {
+    List<TaskModel> assigned = new ArrayList<>();
+    for (Page page : mPages) {
+      for (TaskModel task : page.mTasks.snapshot()) {
+        if (firebaseId != null && firebaseId.equals(task.getAssignedTo())) {
+          assigned.add(task);
+        }
+      }
+    }
+    return assigned;
+  }
+
+  /**
+   * Changes tasks in the window ahead of the server. A task is moved to the loaded page whose range
+   * it now falls in. If that page is not loaded, the task stays in the page it was in until a
+   * snapshot places it, so a change never makes it disappear. New tasks outside the loaded pages
+   * are left to the server.
+   *
+   * @param changes New value of each task from the one in the window, null if it isn't in it.
+   */
+  synchronized void applyLocal(Map<String, ModelInterface.LocalTaskChange> changes) {
+    if (mClosed) {
+      return;
+    }
+    boolean changed = false;
+    for (Map.Entry<String, ModelInterface.LocalTaskChange> entry : changes.entrySet()) {
+      String taskId = entry.getKey();
+      Page source = null;
+      TaskModel current = null;
+      for (Page page : mPages) {
+        current = page.mTasks.get(taskId);
+        if (current != null) {
+          source = page;
+          break;
+        }
+      }
+      TaskModel updated = entry.getValue().apply(current);
+      Page target = updated == null ? null : pageFor(updated);
+      if (target == null && updated != null) {
+        target = source;
+      }
+      if (source != null && source != target) {
+        changed |= !source.mTasks.put(taskId, null).isEmpty();
+      }
+      if (target != null) {
+        changed |= !target.mTasks.put(taskId, updated).isEmpty();
+      }
+    }
+    if (changed) {
+      deliver();
+    }
+  }
+
+  /** @return how many tasks the window holds */
+  public synchronized int size() {
+    int size = 0;
+    for (Page page : mPages) {
+      size += page.mTasks.size();
+    }
+    return size;
+  }
+
+  // Listens to the range of a page, the mirror keeps any tasks it already has until the first
+  // snapshot replaces them
+  private Page attach(final Page page) {
+    Query query = mQuery;
+    if (page.mIndex > 0) {
+      query = query.startAfter(mPageEnds.get(page.mIndex - 1));
+    }
+    if (page.mIndex < mPageEnds.size()) {
+      query = query.endAt(mPageEnds.get(page.mIndex));
+    } else {
+      query = query.limit(mPageSize);
+    }
+
+    page.mTasks.resync();
+    EventListener<QuerySnapshot> listener =
+        (snapshot, e) -> {
+          synchronized (TaskWindow.this) {
+            if (mClosed || !mPages.contains(page)) {
+              return;
+            }
+            if (e != null || snapshot == null) {
+              Log.w(TAG, "Listen failed on page " + page.mIndex, e);
+              post(null);
+              return;
+            }
+            // Nothing to show for a snapshot that changed nothing on a loaded page
+            if (page.mTasks.apply(snapshot).isEmpty() && page.mLoaded) {
+              return;
+            }
+            page.mLoaded = true;
+            deliver();
+          }
+        };
+    page.mListener =
+        mExecutor != null
+            ? query.addSnapshotListener(mExecutor, listener)
+            : query.addSnapshotListener(listener);
+    return page;
+  }
+
+  // Loaded page whose range a task falls in, null if it is outside the window
+  private Page pageFor(TaskModel task) {
+    for (Page page : mPages) {
+      if (!page.mLoaded) {
+        continue;
+      }
+      if (page.mIndex > 0 && compareToEnd(task, mPageEnds.get(page.mIndex - 1)) <= 0) {
+        continue;
+      }
+      if (page.mIndex < mPageEnds.size()) {
+        if (compareToEnd(task, mPageEnds.get(page.mIndex)) <= 0) {
+          return page;
+        }
+      } else {
+        // The limit page only reaches past its last task while it is short
+        List<TaskModel> tasks = page.mTasks.snapshot();
+        if (tasks.size() < mPageSize || mOrder.compare(task, tasks.get(tasks.size() - 1)) < 0) {
+          return page;
+        }
+      }
+    }
+    return null;
+  }
+
+  // Compares a task with the order fields of a page end, the same way the query orders them
+  private static int compareToEnd(TaskModel task, Object[] end) {
+    int order = Integer.compare(task.getPriority(), (Integer) end[0]);
+    if (order != 0) return order;
+    String id = task.getTaskId() == null ? "" : task.getTaskId();
+    return id.compareTo((String) end[1]);
+  }
+
+  private static void detach(Page page) {
+    if (page.mListener != null) {
+      page.mListener.remove();
+      page.mListener = null;
+    }
+  }
+
+  private DocumentMirror<TaskModel> newMirror() {
+    DocumentMirror<TaskModel> mirror = new DocumentMirror<>(mParser, TaskCodec::toMap);
+    mirror.setOrder(mOrder);
+    return mirror;
+  }
+
+  // Sends the tasks of the loaded pages, pages still loading are left out
+  private void deliver() {
+    List<TaskModel> tasks = new ArrayList<>();
+    for (Page page : mPages) {
+      if (page.mLoaded) {
+        tasks.addAll(page.mTasks.snapshot());
+      }
+    }
+    post(Collections.unmodifiableList(tasks));
+  }
+
+  private void post(final List<TaskModel> tasks) {
+    mHandler.post(
+        () -> {
+          synchronized (TaskWindow.this) {
+            if (mClosed) {
+              return;
+            }
+          }
+          mCallback.callback(tasks);
+        });
+  }
+}
@@ -0,0 +1,193 @@
+package cse403.sp2020.tidy.data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.google.firebase.firestore.FieldValue;
+import cse403.sp2020.tidy.data.codec.TaskCodec;
+
+/**
+ * Holds field updates to tasks for a short window and merges the ones made to the same task, so a
+ * burst of taps goes out as a single write. Completion changes keep the last value and priority
+ * changes are summed. Every caller is still called back, with the result of the merged write.
+ *
+ * <p>The summed priority change is limited so it does not take the task below zero, going by the
+ * priority the task had when its first change was queued.
+ *
+ * <p>Must be used from the main thread.
+ */
+class TaskWriteQueue {
+  // Log info
+  private static final String TAG = "TaskWriteQueue";
+
+  /** Priority of a task that has not been loaded, changes to it are not limited */
+  static final int UNKNOWN_PRIORITY = -1;
+
+  /** Sends the merged fields of one task */
+  interface Writer {
+    void write(String taskId, Map<String, Object> fields, CallbackInterface<String> callback);
+  }
+
+  // Changes waiting for the window to close
+  private static class PendingWrite {
+    private Boolean mCompleted;
+    private long mPriorityDelta;
+    private int mBasePriority = UNKNOWN_PRIORITY;
+    private final List<CallbackInterface<String>> mCallbacks = new ArrayList<>();
+  }
+
+  private final Writer mWriter;
+  private final Handler mHandler;
+  private final Map<String, PendingWrite> mPending;
+  private final Runnable mFlush;
+  private long mWindowMillis;
+  private boolean mScheduled;
+
+  // Counts since creation
+  private int mRequestedWrites;
+  private int mSentWrites;
+
+  TaskWriteQueue(Writer writer, long windowMillis) {
+    mWriter = writer;
+    mHandler = new Handler(Looper.getMainLooper());
+    mPending = new LinkedHashMap<>();
+    mFlush = this::flush;
+    mWindowMillis = windowMillis;
+    mScheduled = false;
+    mRequestedWrites = 0;
+    mSentWrites = 0;
+  }
+
+  /** @param windowMillis How long changes wait for others to the same task, 0 to send right away */
+  void setWindow(long windowMillis) {
+    mWindowMillis = windowMillis;
+  }
+
+  void setCompleted(String taskId, boolean completed, CallbackInterface<String> callback) {
+    PendingWrite pending = enqueue(taskId, callback);
+    pending.mCompleted = completed;
+    schedule();
+  }
+
+  /**
+   * @param knownPriority Last known priority of the task, UNKNOWN_PRIORITY if it is not known.
+   *     Only used when no other priority change to the task is waiting, later ones already include
+   *     it.
+   */
+  void adjustPriority(
+      String taskId, int delta, int knownPriority, CallbackInterface<String> callback) {
+    PendingWrite pending = enqueue(taskId, callback);
+    if (pending.mPriorityDelta == 0) {
+      pending.mBasePriority = knownPriority;
+    }
+    pending.mPriorityDelta += delta;
+    if (pending.mBasePriority != UNKNOWN_PRIORITY) {
+      pending.mPriorityDelta = Math.max(pending.mPriorityDelta, -pending.mBasePriority);
+    }
+    schedule();
+  }
+
+  /** Sends everything that is pending right away */
+  void flush() {
+    mHandler.removeCallbacks(mFlush);
+    mScheduled = false;
+    if (mPending.isEmpty()) {
+      return;
+    }
+
+    // Copy first, writers may call back synchronously and queue more changes
+    Map<String, PendingWrite> pending = new LinkedHashMap<>(mPending);
+    mPending.clear();
+    for (Map.Entry<String, PendingWrite> entry : pending.entrySet()) {
+      final String taskId = entry.getKey();
+      final PendingWrite write = entry.getValue();
+
+      Map<String, Object> fields = new HashMap<>();
+      if (write.mCompleted != null) {
+        fields.put(TaskCodec.COMPLETED, write.mCompleted);
+        // Lets old completed tasks be found for archiving
+        fields.put(
+            TaskCodec.COMPLETED_DATE, write.mCompleted ? FieldValue.serverTimestamp() : null);
+      }
+      if (write.mPriorityDelta != 0) {
+        fields.put(TaskCodec.PRIORITY, FieldValue.increment(write.mPriorityDelta));
+      }
+
+      if (fields.isEmpty()) {
+        // The changes cancelled out, nothing to send
+        Log.d(TAG, "Dropped " + write.mCallbacks.size() + " writes that cancel out");
+        for (CallbackInterface<String> callback : write.mCallbacks) {
+          callback.callback(taskId);
+        }
+        continue;
+      }
+
+      mSentWrites++;
+      if (write.mCallbacks.size() > 1) {
+        Log.d(TAG, "Merged " + write.mCallbacks.size() + " writes to task " + taskId);
+      }
+      mWriter.write(
+          taskId,
+          fields,
+          result -> {
+            for (CallbackInterface<String> callback : write.mCallbacks) {
+              callback.callback(result);
+            }
+          });
+    }
+  }
+
+  /** Drops everything that is pending, callers are called back with null */
+  void clear() {
+    mHandler.removeCallbacks(mFlush);
+    mScheduled = false;
+    List<PendingWrite> dropped = new ArrayList<>(mPending.values());
+    mPending.clear();
+    for (PendingWrite write : dropped) {
+      for (CallbackInterface<String> callback : write.mCallbacks) {
+        callback.callback(null);
+      }
+    }
+  }
+
+  /** @return how many requested writes did not have to be sent because they were merged */
+  int getSavedWrites() {
+    return mRequestedWrites - mSentWrites - pendingCount();
+  }
+
+  private int pendingCount() {
+    int count = 0;
+    for (PendingWrite write : mPending.values()) {
+      count += write.mCallbacks.size();
+    }
+    return count;
+  }
+
+  private PendingWrite enqueue(String taskId, CallbackInterface<String> callback) {
+    mRequestedWrites++;
+    PendingWrite pending = mPending.get(taskId);
+    if (pending == null) {
+      pending = new PendingWrite();
+      mPending.put(taskId, pending);
+    }
+    pending.mCallbacks.add(callback);
+    return pending;
+  }
+
+  private void schedule() {
+    if (mWindowMillis <= 0) {
+      flush();
+    } else if (!mScheduled) {
+      // The first change opens the window, later ones wait for the same flush
+      mScheduled = true;
+      mHandler.postDelayed(mFlush, mWindowMillis);
+    }
+  }
+}
@@ -0,0 +1,11 @@
+package cse403.sp2020.tidy.data;
+
+/**
+ * An interface for turning listener data into what a screen shows, called off the main thread
+ *
+ * @param <T> Data received from the listener
+ * @param <V> Result handed to the callback
+ */
+public interface TransformInterface<T, V> {
+  V transform(T data);
+}
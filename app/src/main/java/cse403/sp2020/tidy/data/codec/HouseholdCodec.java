@@ -0,0 +1,43 @@
+package cse403.sp2020.tidy.data.codec;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.firebase.firestore.DocumentSnapshot;
+import cse403.sp2020.tidy.data.model.HouseholdModel;
+
+/**
+ * Converts {@link HouseholdModel}s to and from Firestore documents without reflection. Field names
+ * match the ones Firestore's own mapper uses, so documents written either way can be read either
+ * way.
+ */
+public final class HouseholdCodec {
+  public static final String HOUSEHOLD_ID = "householdId";
+  public static final String NAME = "name";
+
+  private HouseholdCodec() {}
+
+  /**
+   * @param document Household document, may be null.
+   * @return a new household with the document's fields, or null if there is no document.
+   */
+  public static HouseholdModel fromDocument(DocumentSnapshot document) {
+    if (document == null || !document.exists()) return null;
+
+    HouseholdModel household = new HouseholdModel();
+    household.setHouseholdId(document.getString(HOUSEHOLD_ID));
+    household.setName(document.getString(NAME));
+    return household;
+  }
+
+  /**
+   * @param household Household to write.
+   * @return every field of the household, ready for a set() call.
+   */
+  public static Map<String, Object> toMap(HouseholdModel household) {
+    Map<String, Object> map = new HashMap<>();
+    map.put(HOUSEHOLD_ID, household.getHouseholdId());
+    map.put(NAME, household.getName());
+    return map;
+  }
+}
@@ -0,0 +1,66 @@
+package cse403.sp2020.tidy.data.codec;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.firebase.firestore.DocumentSnapshot;
+import cse403.sp2020.tidy.data.model.TaskModel;
+
+/**
+ * Converts {@link TaskModel}s to and from Firestore documents without reflection. Field names
+ * match the ones Firestore's own mapper uses, so documents written either way can be read either
+ * way.
+ */
+public final class TaskCodec {
+  public static final String TASK_ID = "taskId";
+  public static final String NAME = "name";
+  public static final String DESCRIPTION = "description";
+  public static final String PRIORITY = "priority";
+  public static final String ASSIGNED_TO = "assignedTo";
+  public static final String COMPLETED = "completed";
+  public static final String ASSIGNED_DATE = "assignedDate";
+  public static final String COMPLETED_DATE = "completedDate";
+
+  private TaskCodec() {}
+
+  /**
+   * @param document Task document, may be null.
+   * @return a new task with the document's fields, or null if there is no document.
+   */
+  public static TaskModel fromDocument(DocumentSnapshot document) {
+    if (document == null || !document.exists()) return null;
+
+    TaskModel task = new TaskModel();
+    task.setTaskId(document.getString(TASK_ID));
+    task.setName(document.getString(NAME));
+    task.setDescription(document.getString(DESCRIPTION));
+    Long priority = document.getLong(PRIORITY);
+    task.setPriority(priority == null ? 0 : priority.intValue());
+    task.setAssignedTo(document.getString(ASSIGNED_TO));
+    Boolean completed = document.getBoolean(COMPLETED);
+    task.setCompleted(completed != null && completed);
+    // Keep the default date unless the document has the field
+    if (document.contains(ASSIGNED_DATE)) {
+      task.setAssignedDate(document.getTimestamp(ASSIGNED_DATE));
+    }
+    task.setCompletedDate(document.getTimestamp(COMPLETED_DATE));
+    return task;
+  }
+
+  /**
+   * @param task Task to write.
+   * @return every field of the task, ready for a set() call.
+   */
+  public static Map<String, Object> toMap(TaskModel task) {
+    Map<String, Object> map = new HashMap<>();
+    map.put(TASK_ID, task.getTaskId());
+    map.put(NAME, task.getName());
+    map.put(DESCRIPTION, task.getDescription());
+    map.put(PRIORITY, task.getPriority());
+    map.put(ASSIGNED_TO, task.getAssignedTo());
+    map.put(COMPLETED, task.isCompleted());
+    map.put(ASSIGNED_DATE, task.getAssignedDate());
+    map.put(COMPLETED_DATE, task.getCompletedDate());
+    return map;
+  }
+}
@@ -0,0 +1,59 @@
+package cse403.sp2020.tidy.data.codec;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.firebase.firestore.DocumentSnapshot;
+import cse403.sp2020.tidy.data.model.UserModel;
+
+/**
+ * Converts {@link UserModel}s to and from Firestore documents without reflection. Field names
+ * match the ones Firestore's own mapper uses, so documents written either way can be read either
+ * way.
+ */
+public final class UserCodec {
+  public static final String FIREBASE_ID = "firebaseId";
+  public static final String FIRST_NAME = "firstName";
+  public static final String LAST_NAME = "lastName";
+  public static final String PREFERENCES = "preferences";
+
+  private UserCodec() {}
+
+  /**
+   * @param document User document, may be null.
+   * @return a new user with the document's fields, or null if there is no document.
+   */
+  public static UserModel fromDocument(DocumentSnapshot document) {
+    if (document == null || !document.exists()) return null;
+
+    UserModel user = new UserModel();
+    user.setFirebaseId(document.getString(FIREBASE_ID));
+    user.setFirstName(document.getString(FIRST_NAME));
+    user.setLastName(document.getString(LAST_NAME));
+    Object preferences = document.get(PREFERENCES);
+    if (preferences instanceof List) {
+      List<?> values = (List<?>) preferences;
+      List<String> ids = new ArrayList<>(values.size());
+      for (Object value : values) {
+        ids.add(value == null ? null : value.toString());
+      }
+      user.setPreferences(ids);
+    }
+    return user;
+  }
+
+  /**
+   * @param user User to write.
+   * @return every field of the user, ready for a set() call.
+   */
+  public static Map<String, Object> toMap(UserModel user) {
+    Map<String, Object> map = new HashMap<>();
+    map.put(FIREBASE_ID, user.getFirebaseId());
+    map.put(FIRST_NAME, user.getFirstName());
+    map.put(LAST_NAME, user.getLastName());
+    map.put(PREFERENCES, user.getPreferences());
+    return map;
+  }
+}
@@ -14,6 +14,7 @@ public class TaskModel {
   private String assignedTo;
   private boolean completed;
   private Timestamp assignedDate;
+  private Timestamp completedDate;
 
   // Empty constructor for firestore
   public TaskModel() {
@@ -33,6 +34,7 @@ public class TaskModel {
       } else {
         this.assignedDate = other.assignedDate;
       }
+      this.completedDate = other.completedDate;
     }
   }
 
@@ -68,6 +70,15 @@ public class TaskModel {
     return completed;
   }
 
+  // When the task was last completed, null while it is not
+  public Timestamp getCompletedDate() {
+    return completedDate;
+  }
+
+  public void setCompletedDate(Timestamp completedDate) {
+    this.completedDate = completedDate;
+  }
+
   public void setTaskId(String taskId) {
     this.taskId = taskId;
   }
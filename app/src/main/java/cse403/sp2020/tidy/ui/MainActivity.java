@@ -2,20 +2,30 @@ package cse403.sp2020.tidy.ui;
 
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
+import android.view.Choreographer;
 
 import com.google.android.material.tabs.TabLayout;
 import com.google.firebase.auth.FirebaseAuth;
-import com.google.firebase.firestore.FirebaseFirestore;
 
+import androidx.lifecycle.Lifecycle;
 import androidx.viewpager.widget.ViewPager;
 import androidx.appcompat.app.AppCompatActivity;
 
-import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import cse403.sp2020.tidy.R;
+import cse403.sp2020.tidy.data.HouseholdRepository;
+import cse403.sp2020.tidy.data.HouseholdSnapshotStore;
+import cse403.sp2020.tidy.data.HouseholdState;
 import cse403.sp2020.tidy.data.ModelInterface;
+import cse403.sp2020.tidy.data.TaskWindow;
+import cse403.sp2020.tidy.data.model.HouseholdModel;
 import cse403.sp2020.tidy.data.model.TaskModel;
 import cse403.sp2020.tidy.data.model.UserModel;
 import cse403.sp2020.tidy.ui.main.AllChoresFragment;
@@ -26,62 +36,70 @@ import cse403.sp2020.tidy.ui.main.SectionsPagerAdapter;
 public class MainActivity extends AppCompatActivity {
 
   private static final String TAG = "MainActivity";
+
+  // All chores are loaded a page at a time, a few pages around where the user is
+  private static final int TASK_PAGE_SIZE = ModelInterface.TASK_WINDOW_PAGE_SIZE;
+  private static final int MAX_TASK_PAGES = 4;
+
+  // Saved household snapshots are read and written here, one at a time
+  private static final ExecutorService snapshotExecutor = Executors.newSingleThreadExecutor();
+
+  private HouseholdRepository repository;
   private ModelInterface model;
   private ChoresFragment allFrag, myFrag;
   private boolean initialized = false;
+  private boolean userSet = false;
+  private String userId;
+
+  // What was last shown from live data, saved when the screen goes away
+  private HouseholdSnapshotStore snapshotStore;
+  private List<TaskModel> liveAllChores;
+  private List<TaskModel> liveMyChores;
+  private List<UserModel> liveUsers;
+
+  // Window tasks that arrived before the first household state, shown with its users
+  private boolean allChoresPending = false;
+
+  // For logging how long the first chores take to show
+  private long createdAt;
+  private boolean firstFrameLogged = false;
+  private long firstFrameMillis = -1;
+  private String firstFrameSource;
+
+  // Window over all chores, the rest comes from the household state stream
+  private TaskWindow taskWindow;
+
+  // Closes the window once the activity has been stopped for the repository's grace period
+  private final Handler handler = new Handler(Looper.getMainLooper());
+  private final Runnable closeTaskWindow = this::removeListeners;
 
   @Override
   protected void onCreate(Bundle savedInstanceState) {
     super.onCreate(savedInstanceState);
+    createdAt = SystemClock.elapsedRealtime();
     setContentView(R.layout.activity_main);
-    final String userId = FirebaseAuth.getInstance().getUid();
+    // Login passes the user along, other screens leave it to the signed in account
+    userId = getIntent().getStringExtra("tidy_user_id");
+    if (userId == null) {
+      userId = FirebaseAuth.getInstance().getUid();
+    }
     Log.d(TAG, "main userid = " + userId);
-    FirebaseFirestore mFirestore = FirebaseFirestore.getInstance();
-    model = new ModelInterface(mFirestore);
-    model.setCurrentUser(
+    repository = HouseholdRepository.getInstance();
+    model = repository.getModel();
+    snapshotStore = new HouseholdSnapshotStore(getFilesDir());
+    showSavedSnapshot();
+    repository.setCurrentUser(
         userId,
         user -> {
           if (user == null) {
             Log.e(TAG, "Failed to set user in main activity");
           } else {
             Log.d(TAG, "User set");
-            model.setTasksListener(
-                tasks -> {
-                  if (tasks == null) {
-                    Log.e(TAG, "Tasks returned null in listener callback");
-                  } else {
-                    if (!initialized) {
-                      initialized = true;
-                      // Initiate fragments and tabs
-                      ViewPager viewPager = findViewById(R.id.main_view_pager);
-                      setupViewPager(viewPager, userId);
-                      TabLayout tabLayout = findViewById(R.id.main_tabs);
-                      tabLayout.setupWithViewPager(viewPager);
-
-                      // Enable navigation button to ProfileActivity
-                      findViewById(R.id.main_to_profile_button)
-                          .setOnClickListener(
-                              view -> {
-                                Intent intent =
-                                    new Intent(getApplicationContext(), ProfileActivity.class);
-                                intent.putExtra("tidy_user_id", userId);
-                                startActivity(intent);
-                              });
-                    }
-
-                    handleTaskUpdates(tasks);
-                    Log.d(TAG, "Tasks updated");
-                  }
-                });
-            model.setUsersListener(
-                users -> {
-                  if (users == null) {
-                    Log.e(TAG, "No users found");
-                  } else {
-                    handleUsersUpdates(users);
-                    Log.d(TAG, "Users updated");
-                  }
-                });
+            userSet = true;
+            observeStreams();
+            if (getLifecycle().getCurrentState().isAtLeast(Lifecycle.State.STARTED)) {
+              addListeners();
+            }
           }
         });
   }
@@ -91,46 +109,196 @@ public class MainActivity extends AppCompatActivity {
     return model;
   }
 
-  /** Always called whenever the fragment is no longer being used */
+  // Lets the all chores fragment move the window as it scrolls, null while not listening
+  public TaskWindow getTaskWindow() {
+    return taskWindow;
+  }
+
+  /** @return ms from launch to the frame that first showed chores, or -1 until it is drawn */
+  public long getFirstFrameMillis() {
+    return firstFrameMillis;
+  }
+
+  /** @return what the first chores were shown from, "saved snapshot" or "live data" */
+  public String getFirstFrameSource() {
+    return firstFrameSource;
+  }
+
+  /**
+   * Always called whenever the activity is no longer visible. The streams stop on their own and the
+   * task window is closed later, both keep their listeners for a grace period so coming back does
+   * not download everything again.
+   */
   @Override
-  public void onPause() {
-    super.onPause();
-    if (initialized) {
-      model.removeListeners();
+  public void onStop() {
+    super.onStop();
+    handler.postDelayed(closeTaskWindow, repository.getListenerGracePeriod());
+    saveSnapshot();
+  }
+
+  /** Always called whenever the activity becomes visible */
+  @Override
+  public void onStart() {
+    super.onStart();
+    handler.removeCallbacks(closeTaskWindow);
+
+    if (userSet) {
+      addListeners();
     }
   }
 
-  /** Always called whenever the fragment starts being used */
   @Override
-  public void onResume() {
-    super.onResume();
+  protected void onDestroy() {
+    super.onDestroy();
+    handler.removeCallbacks(closeTaskWindow);
+    removeListeners();
+  }
+
+  private void addListeners() {
+    if (taskWindow == null) {
+      taskWindow =
+          model.openTaskWindow(
+              TASK_PAGE_SIZE,
+              MAX_TASK_PAGES,
+              // Already ordered by priority
+              tasks -> {
+                if (tasks == null) {
+                  Log.e(TAG, "Tasks returned null in listener callback");
+                } else if (liveUsers == null) {
+                  liveAllChores = tasks;
+                  allChoresPending = true;
+                } else {
+                  initialize();
+                  liveAllChores = tasks;
+                  handleAllChoresUpdates(tasks);
+                  logFirstFrame("live data");
+                  Log.d(TAG, "Tasks updated");
+                }
+              });
+    }
+  }
 
+  private void removeListeners() {
+    if (taskWindow != null) {
+      taskWindow.close();
+      taskWindow = null;
+    }
+  }
+
+  // Called once the user is set, the stream only listens while the activity is started
+  private void observeStreams() {
+    repository.getHouseholdStateStream().observe(this, this::handleStateUpdates);
+  }
+
+  // Household, my chores and users arrive together, at most once a frame
+  private void handleStateUpdates(HouseholdState state) {
+    if (state == null) {
+      Log.e(TAG, "Household state returned null in stream");
+      return;
+    }
+    initialize();
+    liveUsers = state.getUsers();
+    liveMyChores = state.getMyTasks();
+    handleUsersUpdates(liveUsers);
+    handleMyChoresUpdates(liveMyChores);
+    if (allChoresPending) {
+      allChoresPending = false;
+      handleAllChoresUpdates(liveAllChores);
+    }
+    logFirstFrame("live data");
+    Log.d(TAG, "Household state updated");
+  }
+
+  // Sets up the fragments and tabs the first time there is something to show
+  private void initialize() {
     if (initialized) {
-      // Add listener on tasks
-      model.setTasksListener(
-          tasks -> {
-            if (tasks == null) {
-              Log.e(TAG, "Tasks returned null in listener callback");
-            } else {
-              Log.d(TAG, "Tasks updated");
-              handleTaskUpdates(tasks);
-            }
-          });
-
-      model.setUsersListener(
-          users -> {
-            if (users == null) {
-              Log.e(TAG, "No users found");
-            } else {
-              handleUsersUpdates(users);
-            }
-          });
+      return;
     }
+    initialized = true;
+
+    // Initiate fragments and tabs
+    ViewPager viewPager = findViewById(R.id.main_view_pager);
+    setupViewPager(viewPager, userId);
+    TabLayout tabLayout = findViewById(R.id.main_tabs);
+    tabLayout.setupWithViewPager(viewPager);
+
+    // Enable navigation button to ProfileActivity
+    findViewById(R.id.main_to_profile_button)
+        .setOnClickListener(
+            view -> {
+              Intent intent = new Intent(getApplicationContext(), ProfileActivity.class);
+              intent.putExtra("tidy_user_id", userId);
+              startActivity(intent);
+            });
   }
 
-  private void handleTaskUpdates(List<TaskModel> tasks) {
-    Collections.sort(tasks, (t1, t2) -> t1.getPriority() - t2.getPriority());
+  // Shows the chores saved at the end of the last visit until live data arrives
+  private void showSavedSnapshot() {
+    final String user = userId;
+    snapshotExecutor.execute(
+        () -> {
+          HouseholdSnapshotStore.Snapshot snapshot = snapshotStore.load(user);
+          if (snapshot == null) {
+            Log.d(TAG, "No saved chores to show");
+            return;
+          }
+          runOnUiThread(
+              () -> {
+                // Live data wins if it got here first
+                boolean allShown = liveAllChores != null && !allChoresPending;
+                if ((allShown && liveMyChores != null) || isFinishing()) {
+                  return;
+                }
+                initialize();
+                // Both were saved in the order they were shown
+                if (!allShown) {
+                  handleAllChoresUpdates(snapshot.getTasks());
+                }
+                if (liveMyChores == null) {
+                  handleMyChoresUpdates(snapshot.getMyTasks());
+                }
+                if (liveUsers == null) {
+                  handleUsersUpdates(snapshot.getUsers());
+                }
+                logFirstFrame("saved snapshot");
+              });
+        });
+  }
+
+  // Saves the last live chores so the next launch can show them right away
+  private void saveSnapshot() {
+    final HouseholdModel household = model.getHousehold();
+    final List<TaskModel> tasks = liveAllChores;
+    final List<TaskModel> myTasks = liveMyChores;
+    final List<UserModel> users = liveUsers;
+    if (household == null || tasks == null || myTasks == null || users == null) {
+      return;
+    }
+    final String user = userId;
+    snapshotExecutor.execute(() -> snapshotStore.save(user, household, users, tasks, myTasks));
+  }
+
+  // Logs the time from launch to the frame that first shows chores
+  private void logFirstFrame(String source) {
+    if (firstFrameLogged) {
+      return;
+    }
+    firstFrameLogged = true;
+    Choreographer.getInstance()
+        .postFrameCallback(
+            frameTimeNanos -> {
+              firstFrameSource = source;
+              firstFrameMillis = SystemClock.elapsedRealtime() - createdAt;
+              Log.i(
+                  TAG, "First chores frame from " + source + " after " + firstFrameMillis + " ms");
+            });
+  }
+
+  private void handleAllChoresUpdates(List<TaskModel> tasks) {
     allFrag.updateChoreList(tasks);
+  }
+
+  private void handleMyChoresUpdates(List<TaskModel> tasks) {
     myFrag.updateChoreList(tasks);
   }
 
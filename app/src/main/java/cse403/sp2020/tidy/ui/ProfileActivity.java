@@ -28,13 +28,15 @@ import com.bumptech.glide.request.RequestOptions;
 import com.google.android.gms.auth.api.signin.GoogleSignIn;
 import com.google.android.gms.auth.api.signin.GoogleSignInAccount;
 import com.google.firebase.auth.FirebaseAuth;
-import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.ListenerRegistration;
 import com.bumptech.glide.Glide;
 import com.bumptech.glide.load.engine.DiskCacheStrategy;
 import static com.bumptech.glide.load.resource.drawable.DrawableTransitionOptions.withCrossFade;
 import com.bumptech.glide.*;
 
 import cse403.sp2020.tidy.R;
+import cse403.sp2020.tidy.data.HouseholdRepository;
+import cse403.sp2020.tidy.data.HouseholdSnapshotStore;
 import cse403.sp2020.tidy.data.ModelInterface;
 import cse403.sp2020.tidy.data.model.HouseholdModel;
 import cse403.sp2020.tidy.data.model.TaskModel;
@@ -50,7 +52,9 @@ public class ProfileActivity extends AppCompatActivity {
   private RecyclerView recyclerView;
   private RecyclerAdapter recyclerAdapter;
   private LinearLayoutManager mLayoutManager;
+  private HouseholdRepository repository;
   private ModelInterface modelInterface;
+  private ListenerRegistration tasksRegistration;
   private UserModel user;
   private HouseholdModel household;
   private String username;
@@ -70,8 +74,9 @@ public class ProfileActivity extends AppCompatActivity {
     final TextView houseNameView = (TextView) findViewById(R.id.profile_household_name);
     mAuth = FirebaseAuth.getInstance().getCurrentUser().getUid();
 
-    // initialize firestore instance
-    modelInterface = new ModelInterface(FirebaseFirestore.getInstance());
+    // use the shared model, it is usually already set up by MainActivity
+    repository = HouseholdRepository.getInstance();
+    modelInterface = repository.getModel();
 
     GoogleSignInAccount acct = GoogleSignIn.getLastSignedInAccount(this);
     String photoURL = acct.getPhotoUrl().toString();
@@ -87,7 +92,7 @@ public class ProfileActivity extends AppCompatActivity {
         .apply(requestOptions)
         .into((ImageView) findViewById(R.id.profile_picture));
 
-    modelInterface.setCurrentUser(
+    repository.setCurrentUser(
         mAuth,
         setUser -> {
           if (setUser == null) {
@@ -106,257 +111,270 @@ public class ProfileActivity extends AppCompatActivity {
             }
 
             houseNameView.setText(houseName);
-            choreListIDs = setUser.getPreferences();
-            modelInterface.setTasksListener(
-                tasks -> {
-                  if (tasks == null) {
-                    taskList = new ArrayList<>();
-                    Log.d(TAG, "Tasks is null");
-                  } else {
-                    taskList = new ArrayList<>(tasks);
-                    Log.d(TAG, "Reached here");
-                  }
-                  if (choreListIDs
-                      == null) { // don't set chore preferences in db until changed in recycler
-                    // adapter
-                    Log.d(TAG, "chore list is null");
-                    choreListIDs = new ArrayList<>();
-                    for (TaskModel t : taskList) {
-                      choreListIDs.add(t.getTaskId());
-                      Log.d(TAG, t.getName());
-                    }
-                  } else if (taskList.size()
-                      != choreListIDs
-                          .size()) { // if there is an update to task list, update chorelist
-                    for (TaskModel t : taskList) {
-                      if (!choreListIDs.contains(t.getTaskId())) {
-                        choreListIDs.add(t.getTaskId());
-                      }
-                    }
-                    // remove any deleted tasks and append any new tasks
-                  }
-
-                  // Build the combined chore preferences list
-                  choreList = new ArrayList<>();
-                  for (String taskID : choreListIDs) {
-                    for (TaskModel t : taskList) {
-                      if (t.getTaskId().equals(taskID)) {
-                        choreList.add(new ChoreEntry(t.getTaskId(), t.getName()));
+            choreListIDs = new ArrayList<>(setUser.getPreferences());
+            if (tasksRegistration != null) {
+              tasksRegistration.remove();
+            }
+            tasksRegistration =
+                repository.addTasksListener(
+                    tasks -> {
+                      if (tasks == null) {
+                        taskList = new ArrayList<>();
+                        Log.d(TAG, "Tasks is null");
+                      } else {
+                        taskList = new ArrayList<>(tasks);
+                        Log.d(TAG, "Reached here");
                       }
-                    }
-                  }
-
-                  // Button for going back to main activity
-                  ImageButton backToMain = (ImageButton) findViewById(R.id.profile_back);
-                  backToMain.setOnClickListener(
-                      new View.OnClickListener() {
-                        @Override
-                        public void onClick(View v) {
-                          finish();
+                      // choreListIDs starts from the user's preferences, so it is never null
+                      if (taskList.size()
+                          != choreListIDs
+                              .size()) { // if there is an update to task list, update chorelist
+                        for (TaskModel t : taskList) {
+                          if (!choreListIDs.contains(t.getTaskId())) {
+                            choreListIDs.add(t.getTaskId());
+                          }
                         }
-                      });
-
-                  // Button for going back to main activity
-                  ImageButton profileSettings = (ImageButton) findViewById(R.id.settings_button);
-                  profileSettings.setOnClickListener(
-                      view -> {
-                        // Model add task
-                        UserModel u = modelInterface.getCurrentUser();
-                        if (modelInterface != null && modelInterface.getHousehold() != null) {
-                          houseName = modelInterface.getHousehold().getName();
+                        // remove any deleted tasks and append any new tasks
+                      }
+
+                      // Build the combined chore preferences list
+                      choreList = new ArrayList<>();
+                      for (String taskID : choreListIDs) {
+                        TaskModel t = modelInterface.getTaskById(taskID);
+                        if (t != null) {
+                          choreList.add(new ChoreEntry(t.getTaskId(), t.getName()));
                         }
-                        final Dialog dialog =
-                            new Dialog(Objects.requireNonNull(ProfileActivity.this));
-                        dialog.setContentView(R.layout.edit_user_dialog);
-                        ((EditText) dialog.findViewById(R.id.set_first_name))
-                            .setText(u.getFirstName());
-                        ((EditText) dialog.findViewById(R.id.set_last_name))
-                            .setText(u.getLastName());
-                        ((EditText) dialog.findViewById(R.id.set_house_name)).setText(houseName);
-                        dialog.show();
-                        dialog
-                            .findViewById(R.id.leave_household)
-                            .setOnClickListener(
-                                v -> {
-                                  new AlertDialog.Builder(this)
-                                      .setTitle("Leave Household")
-                                      .setMessage("Do you really want to leave the household?")
-                                      .setIcon(android.R.drawable.ic_dialog_alert)
-                                      .setPositiveButton(
-                                          android.R.string.yes,
-                                          (d, w) -> {
-                                            modelInterface.removeUserFromHousehold(
-                                                h -> {
-                                                  if (h != null) {
-                                                    Intent loginActivityIntent =
-                                                        new Intent(
-                                                            ProfileActivity.this,
-                                                            LoginActivity.class);
-                                                    loginActivityIntent.setFlags(
-                                                        Intent.FLAG_ACTIVITY_NEW_TASK
-                                                            | Intent.FLAG_ACTIVITY_CLEAR_TASK);
-                                                    startActivity(loginActivityIntent);
-                                                  } else {
-                                                    Toast.makeText(
-                                                            ProfileActivity.this,
-                                                            "Failed to delete user",
-                                                            Toast.LENGTH_SHORT)
-                                                        .show();
-                                                  }
-                                                });
-                                          })
-                                      .setNegativeButton(android.R.string.no, null)
-                                      .show();
-                                });
-                        dialog
-                            .findViewById(R.id.edit_user_dialog_cancel)
-                            .setOnClickListener(view1 -> dialog.dismiss());
-                        dialog
-                            .findViewById(R.id.edit_user_dialog_submit)
-                            .setOnClickListener(
-                                view12 -> {
-                                  String first_name =
-                                      ((EditText) dialog.findViewById(R.id.set_first_name))
-                                          .getText()
-                                          .toString();
-                                  String last_name =
-                                      ((EditText) dialog.findViewById(R.id.set_last_name))
-                                          .getText()
-                                          .toString();
-                                  String house_name =
-                                      ((EditText) dialog.findViewById(R.id.set_house_name))
-                                          .getText()
-                                          .toString();
-                                  boolean valid = !first_name.isEmpty();
-                                  valid &= !last_name.isEmpty();
-                                  valid &= !house_name.isEmpty();
-                                  if (valid) {
-                                    u.setFirstName(first_name);
-                                    u.setLastName(last_name);
-                                    modelInterface.updateCurrentUser(
-                                        u,
-                                        nu -> {
-                                          if (nu == null) {
-                                            Toast.makeText(
-                                                    getBaseContext(),
-                                                    "Failed to update user",
-                                                    Toast.LENGTH_SHORT)
-                                                .show();
-                                          } else {
-                                            nameView.setText(
-                                                nu.getFirstName() + " " + nu.getLastName());
-                                          }
-                                        });
-                                    HouseholdModel h = modelInterface.getHousehold();
-                                    h.setName(house_name);
-                                    modelInterface.updateHousehold(
-                                        h,
-                                        nh -> {
-                                          if (nh == null) {
-                                            Toast.makeText(
-                                                    getBaseContext(),
-                                                    "Failed to update household name",
-                                                    Toast.LENGTH_SHORT)
-                                                .show();
-                                          } else {
-                                            houseNameView.setText(house_name);
-                                            dialog.dismiss();
-                                          }
-                                        });
-                                  } else {
-                                    Toast.makeText(
-                                            getBaseContext(),
-                                            "All fields must be filled",
-                                            Toast.LENGTH_SHORT)
-                                        .show();
-                                  }
-                                });
-                      });
-
-                  // Button for sharing household
-                  ImageButton shareHouse = (ImageButton) findViewById(R.id.share_button);
-                  shareHouse.setOnClickListener(
-                      v -> {
-                        String dynamicLink = modelInterface.getSharingLink().toString();
-                        Intent sendIntent = new Intent();
-                        sendIntent.setAction(Intent.ACTION_SEND);
-                        sendIntent.putExtra(Intent.EXTRA_SUBJECT, "Share household with others");
-                        sendIntent.putExtra(Intent.EXTRA_TEXT, dynamicLink);
-                        sendIntent.setType("text/plain");
-                        Intent shareIntent =
-                            Intent.createChooser(sendIntent, "Add users to household");
-                        startActivity(shareIntent);
-                      });
-
-                  ImageButton signOut = (ImageButton) findViewById(R.id.sign_out_button);
-                  signOut.setOnClickListener(
-                      v -> {
-                        Intent signOutIntent =
-                            new Intent(ProfileActivity.this, LoginActivity.class);
-                        signOutIntent.setFlags(
-                            Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
-                        signOutIntent.putExtra("SIGNOUT", true);
-                        startActivity(signOutIntent);
-                      });
-
-                  // Set up recycler view for drag and drop chore preference list
-                  recyclerView = findViewById(R.id.chore_preference_list);
-                  mLayoutManager = new LinearLayoutManager(this);
-                  recyclerAdapter = new RecyclerAdapter(choreList);
-                  recyclerView.setLayoutManager(mLayoutManager);
-                  recyclerView.setAdapter(recyclerAdapter);
-
-                  RecyclerView.ItemDecoration divider =
-                      new DividerItemDecoration(this, DividerItemDecoration.VERTICAL);
-                  recyclerView.addItemDecoration(divider);
-
-                  ItemTouchHelper helper =
-                      new ItemTouchHelper(
-                          new ItemTouchHelper.SimpleCallback(
-                              ItemTouchHelper.UP | ItemTouchHelper.DOWN, 0) {
-                            @Override
-                            public boolean onMove(
-                                @NonNull RecyclerView recyclerView,
-                                @NonNull RecyclerView.ViewHolder dragged,
-                                @NonNull RecyclerView.ViewHolder target) {
-                              int draggedPosition = dragged.getAdapterPosition();
-
-                              int targetPosition = target.getAdapterPosition();
-
-                              Collections.swap(choreList, draggedPosition, targetPosition);
-
-                              choreListIDs.clear();
-                              for (ChoreEntry ce : choreList) {
-                                choreListIDs.add(ce.taskId);
-                              }
-                              setUser.setPreferences(choreListIDs);
-
-                              modelInterface.updateCurrentUser(
-                                  setUser,
-                                  updatedUser -> {
-                                    // reset chore preference list if null
-                                    if (updatedUser == null) {
-                                      Toast.makeText(
-                                              ProfileActivity.this,
-                                              "Update failed.",
-                                              Toast.LENGTH_SHORT)
-                                          .show();
-                                    }
-                                  });
+                      }
 
-                              recyclerAdapter.notifyItemMoved(draggedPosition, targetPosition);
+                      // Button for going back to main activity
+                      ImageButton backToMain = (ImageButton) findViewById(R.id.profile_back);
+                      backToMain.setOnClickListener(
+                          new View.OnClickListener() {
+                            @Override
+                            public void onClick(View v) {
+                              finish();
+                            }
+                          });
 
-                              return false;
+                      // Button for going back to main activity
+                      ImageButton profileSettings =
+                          (ImageButton) findViewById(R.id.settings_button);
+                      profileSettings.setOnClickListener(
+                          view -> {
+                            // Model add task
+                            UserModel u = new UserModel(modelInterface.getCurrentUser());
+                            if (modelInterface != null && modelInterface.getHousehold() != null) {
+                              houseName = modelInterface.getHousehold().getName();
                             }
+                            final Dialog dialog =
+                                new Dialog(Objects.requireNonNull(ProfileActivity.this));
+                            dialog.setContentView(R.layout.edit_user_dialog);
+                            ((EditText) dialog.findViewById(R.id.set_first_name))
+                                .setText(u.getFirstName());
+                            ((EditText) dialog.findViewById(R.id.set_last_name))
+                                .setText(u.getLastName());
+                            ((EditText) dialog.findViewById(R.id.set_house_name))
+                                .setText(houseName);
+                            dialog.show();
+                            dialog
+                                .findViewById(R.id.leave_household)
+                                .setOnClickListener(
+                                    v -> {
+                                      new AlertDialog.Builder(this)
+                                          .setTitle("Leave Household")
+                                          .setMessage("Do you really want to leave the household?")
+                                          .setIcon(android.R.drawable.ic_dialog_alert)
+                                          .setPositiveButton(
+                                              android.R.string.yes,
+                                              (d, w) -> {
+                                                repository.removeUserFromHousehold(
+                                                    h -> {
+                                                      if (h != null) {
+                                                        // The saved household is not theirs now
+                                                        new HouseholdSnapshotStore(getFilesDir())
+                                                            .delete(h.getFirebaseId());
+                                                        Intent loginActivityIntent =
+                                                            new Intent(
+                                                                ProfileActivity.this,
+                                                                LoginActivity.class);
+                                                        loginActivityIntent.setFlags(
+                                                            Intent.FLAG_ACTIVITY_NEW_TASK
+                                                                | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+                                                        startActivity(loginActivityIntent);
+                                                      } else {
+                                                        Toast.makeText(
+                                                                ProfileActivity.this,
+                                                                "Failed to delete user",
+                                                                Toast.LENGTH_SHORT)
+                                                            .show();
+                                                      }
+                                                    });
+                                              })
+                                          .setNegativeButton(android.R.string.no, null)
+                                          .show();
+                                    });
+                            dialog
+                                .findViewById(R.id.edit_user_dialog_cancel)
+                                .setOnClickListener(view1 -> dialog.dismiss());
+                            dialog
+                                .findViewById(R.id.edit_user_dialog_submit)
+                                .setOnClickListener(
+                                    view12 -> {
+                                      String first_name =
+                                          ((EditText) dialog.findViewById(R.id.set_first_name))
+                                              .getText()
+                                              .toString();
+                                      String last_name =
+                                          ((EditText) dialog.findViewById(R.id.set_last_name))
+                                              .getText()
+                                              .toString();
+                                      String house_name =
+                                          ((EditText) dialog.findViewById(R.id.set_house_name))
+                                              .getText()
+                                              .toString();
+                                      boolean valid = !first_name.isEmpty();
+                                      valid &= !last_name.isEmpty();
+                                      valid &= !house_name.isEmpty();
+                                      if (valid) {
+                                        u.setFirstName(first_name);
+                                        u.setLastName(last_name);
+                                        modelInterface.updateCurrentUser(
+                                            u,
+                                            nu -> {
+                                              if (nu == null) {
+                                                Toast.makeText(
+                                                        getBaseContext(),
+                                                        "Failed to update user",
+                                                        Toast.LENGTH_SHORT)
+                                                    .show();
+                                              } else {
+                                                nameView.setText(
+                                                    nu.getFirstName() + " " + nu.getLastName());
+                                              }
+                                            });
+                                        HouseholdModel h =
+                                            new HouseholdModel(modelInterface.getHousehold());
+                                        h.setName(house_name);
+                                        modelInterface.updateHousehold(
+                                            h,
+                                            nh -> {
+                                              if (nh == null) {
+                                                Toast.makeText(
+                                                        getBaseContext(),
+                                                        "Failed to update household name",
+                                                        Toast.LENGTH_SHORT)
+                                                    .show();
+                                              } else {
+                                                houseNameView.setText(house_name);
+                                                dialog.dismiss();
+                                              }
+                                            });
+                                      } else {
+                                        Toast.makeText(
+                                                getBaseContext(),
+                                                "All fields must be filled",
+                                                Toast.LENGTH_SHORT)
+                                            .show();
+                                      }
+                                    });
+                          });
 
-                            @Override
-                            public void onSwiped(
-                                @NonNull RecyclerView.ViewHolder viewHolder, int direction) {}
+                      // Button for sharing household
+                      ImageButton shareHouse = (ImageButton) findViewById(R.id.share_button);
+                      shareHouse.setOnClickListener(
+                          v -> {
+                            String dynamicLink = modelInterface.getSharingLink().toString();
+                            Intent sendIntent = new Intent();
+                            sendIntent.setAction(Intent.ACTION_SEND);
+                            sendIntent.putExtra(
+                                Intent.EXTRA_SUBJECT, "Share household with others");
+                            sendIntent.putExtra(Intent.EXTRA_TEXT, dynamicLink);
+                            sendIntent.setType("text/plain");
+                            Intent shareIntent =
+                                Intent.createChooser(sendIntent, "Add users to household");
+                            startActivity(shareIntent);
+                          });
+
+                      ImageButton signOut = (ImageButton) findViewById(R.id.sign_out_button);
+                      signOut.setOnClickListener(
+                          v -> {
+                            Intent signOutIntent =
+                                new Intent(ProfileActivity.this, LoginActivity.class);
+                            signOutIntent.setFlags(
+                                Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+                            signOutIntent.putExtra("SIGNOUT", true);
+                            startActivity(signOutIntent);
                           });
 
-                  helper.attachToRecyclerView(recyclerView);
-                });
+                      // Set up recycler view for drag and drop chore preference list
+                      recyclerView = findViewById(R.id.chore_preference_list);
+                      mLayoutManager = new LinearLayoutManager(this);
+                      recyclerAdapter = new RecyclerAdapter(choreList);
+                      recyclerView.setLayoutManager(mLayoutManager);
+                      recyclerView.setAdapter(recyclerAdapter);
+
+                      RecyclerView.ItemDecoration divider =
+                          new DividerItemDecoration(this, DividerItemDecoration.VERTICAL);
+                      recyclerView.addItemDecoration(divider);
+
+                      ItemTouchHelper helper =
+                          new ItemTouchHelper(
+                              new ItemTouchHelper.SimpleCallback(
+                                  ItemTouchHelper.UP | ItemTouchHelper.DOWN, 0) {
+                                @Override
+                                public boolean onMove(
+                                    @NonNull RecyclerView recyclerView,
+                                    @NonNull RecyclerView.ViewHolder dragged,
+                                    @NonNull RecyclerView.ViewHolder target) {
+                                  int draggedPosition = dragged.getAdapterPosition();
+
+                                  int targetPosition = target.getAdapterPosition();
+
+                                  Collections.swap(choreList, draggedPosition, targetPosition);
+
+                                  choreListIDs.clear();
+                                  for (ChoreEntry ce : choreList) {
+                                    choreListIDs.add(ce.taskId);
+                                  }
+                                  UserModel prefUser =
+                                      new UserModel(modelInterface.getCurrentUser());
+                                  prefUser.setPreferences(choreListIDs);
+
+                                  modelInterface.updateCurrentUser(
+                                      prefUser,
+                                      updatedUser -> {
+                                        // reset chore preference list if null
+                                        if (updatedUser == null) {
+                                          Toast.makeText(
+                                                  ProfileActivity.this,
+                                                  "Update failed.",
+                                                  Toast.LENGTH_SHORT)
+                                              .show();
+                                        }
+                                      });
+
+                                  recyclerAdapter.notifyItemMoved(draggedPosition, targetPosition);
+
+                                  return false;
+                                }
+
+                                @Override
+                                public void onSwiped(
+                                    @NonNull RecyclerView.ViewHolder viewHolder, int direction) {}
+                              });
+
+                      helper.attachToRecyclerView(recyclerView);
+                    });
           }
         });
   }
+
+  @Override
+  protected void onDestroy() {
+    super.onDestroy();
+    if (tasksRegistration != null) {
+      tasksRegistration.remove();
+      tasksRegistration = null;
+    }
+  }
 }
@@ -26,10 +26,10 @@ import com.google.firebase.auth.AuthResult;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
 import com.google.firebase.auth.GoogleAuthProvider;
-import com.google.firebase.firestore.FirebaseFirestore;
 
 import cse403.sp2020.tidy.R;
-import cse403.sp2020.tidy.data.ModelInterface;
+import cse403.sp2020.tidy.data.HouseholdRepository;
+import cse403.sp2020.tidy.data.HouseholdSnapshotStore;
 import cse403.sp2020.tidy.ui.MainActivity;
 
 /**
@@ -90,7 +90,7 @@ public class LoginActivity extends AppCompatActivity implements View.OnClickList
 
     if (getIntent().getBooleanExtra("SIGNOUT", false)) {
       signOutGoogle();
-      mAuth.signOut();
+      signOutFirebase();
     }
 
     // [START customize_button]
@@ -207,6 +207,13 @@ public class LoginActivity extends AppCompatActivity implements View.OnClickList
   }
   // [END revokeAccessGoogle]
 
+  // Signs out of firebase and forgets what was saved for the user
+  private void signOutFirebase() {
+    new HouseholdSnapshotStore(getFilesDir()).delete(mAuth.getUid());
+    mAuth.signOut();
+    HouseholdRepository.getInstance().reset();
+  }
+
   private void updateGoogleSignInUI(@Nullable GoogleSignInAccount account) {
     if (account != null) {
       mStatusTextView.setText(getString(R.string.signed_in_fmt, account.getEmail()));
@@ -271,22 +278,27 @@ public class LoginActivity extends AppCompatActivity implements View.OnClickList
   }
 
   public void proceedToApp() {
-    FirebaseFirestore mFirestore = FirebaseFirestore.getInstance();
-    ModelInterface model = new ModelInterface(mFirestore);
-    model.setCurrentUser(
-        mAuth.getUid(),
-        user -> {
-          if (user == null) {
-            Log.e(TAG, "Error setting current user in login");
-          } else if (model.getHousehold() != null) {
-            Intent mainActivityIntent = new Intent(this, MainActivity.class);
-            mainActivityIntent.putExtra("tidy_user_id", mAuth.getUid());
-            startActivity(mainActivityIntent);
-          } else {
-            Intent setupActivityIntent = new Intent(this, UserSetup.class);
-            startActivity(setupActivityIntent);
-          }
-        });
+    HouseholdRepository repository = HouseholdRepository.getInstance();
+    // Fails instead of leaving the button doing nothing when the lookup hangs
+    repository
+        .setCurrentUserAsync(mAuth.getUid())
+        .addOnCompleteListener(
+            this,
+            task -> {
+              if (!task.isSuccessful()) {
+                Log.e(TAG, "Error setting current user in login", task.getException());
+                toast("Could not load your account, try again");
+                return;
+              }
+              if (repository.getModel().getHousehold() != null) {
+                Intent mainActivityIntent = new Intent(this, MainActivity.class);
+                mainActivityIntent.putExtra("tidy_user_id", mAuth.getUid());
+                startActivity(mainActivityIntent);
+              } else {
+                Intent setupActivityIntent = new Intent(this, UserSetup.class);
+                startActivity(setupActivityIntent);
+              }
+            });
   }
 
   @Override
@@ -301,7 +313,7 @@ public class LoginActivity extends AppCompatActivity implements View.OnClickList
         break;
       case R.id.sign_out_button:
         signOutGoogle();
-        mAuth.signOut();
+        signOutFirebase();
         updateFireBaseSignInUI(null);
         break;
     }
@@ -16,14 +16,15 @@ import com.google.android.gms.tasks.OnSuccessListener;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.dynamiclinks.FirebaseDynamicLinks;
 import com.google.firebase.dynamiclinks.PendingDynamicLinkData;
-import com.google.firebase.firestore.FirebaseFirestore;
 
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 
 import cse403.sp2020.tidy.R;
+import cse403.sp2020.tidy.data.HouseholdRepository;
 import cse403.sp2020.tidy.data.ModelInterface;
 import cse403.sp2020.tidy.data.model.HouseholdModel;
+import cse403.sp2020.tidy.data.model.UserModel;
 import cse403.sp2020.tidy.ui.MainActivity;
 
 public class UserSetup extends AppCompatActivity {
@@ -31,7 +32,7 @@ public class UserSetup extends AppCompatActivity {
   private Button mJoinHouseholdButton;
   private Button mCreateHouseholdButton;
   private TextView mSharingLinkEdit;
-  private FirebaseFirestore mFirestore;
+  private HouseholdRepository mRepository;
   private FirebaseAuth mAuth;
 
   @Override
@@ -44,7 +45,7 @@ public class UserSetup extends AppCompatActivity {
   @Override
   protected void onCreate(Bundle savedInstanceState) {
     super.onCreate(savedInstanceState);
-    mFirestore = FirebaseFirestore.getInstance();
+    mRepository = HouseholdRepository.getInstance();
     mAuth = FirebaseAuth.getInstance();
     setContentView(R.layout.activity_user_setup);
 
@@ -97,13 +98,14 @@ public class UserSetup extends AppCompatActivity {
           if (str_link.startsWith("https://tidy.household/")) {
             Uri deepLink = Uri.parse(str_link);
             String householdId = deepLink.getLastPathSegment();
-            ModelInterface model = new ModelInterface(mFirestore);
+            ModelInterface model = mRepository.getModel();
 
-            model.setCurrentUser(
+            mRepository.setCurrentUser(
                 mAuth.getUid(),
-                u -> {
-                  if (u != null) {
+                currentUser -> {
+                  if (currentUser != null) {
                     // Update the user display name
+                    UserModel u = new UserModel(currentUser);
                     String displayName = mAuth.getCurrentUser().getDisplayName();
                     if (displayName.contains(" ")) {
                       String name[] = displayName.split(" ");
@@ -112,7 +114,7 @@ public class UserSetup extends AppCompatActivity {
                     } else {
                       u.setFirstName(displayName);
                     }
-                    model.setCurrentHousehold(
+                    mRepository.setCurrentHousehold(
                         householdId,
                         h -> {
                           // Household was created successfully
@@ -151,11 +153,12 @@ public class UserSetup extends AppCompatActivity {
 
     mCreateHouseholdButton.setOnClickListener(
         v -> {
-          ModelInterface model = new ModelInterface(mFirestore);
-          model.setCurrentUser(
+          ModelInterface model = mRepository.getModel();
+          mRepository.setCurrentUser(
               mAuth.getUid(),
-              u -> {
-                if (u != null) {
+              currentUser -> {
+                if (currentUser != null) {
+                  UserModel u = new UserModel(currentUser);
                   String displayName = mAuth.getCurrentUser().getDisplayName();
                   if (displayName != null && displayName.contains(" ")) {
                     String name[] = displayName.split(" ");
@@ -167,7 +170,7 @@ public class UserSetup extends AppCompatActivity {
                     u.setFirstName("No");
                     u.setLastName("Name");
                   }
-                  model.createHousehold(
+                  mRepository.createHousehold(
                       new HouseholdModel(),
                       h -> {
                         // Household was created successfully
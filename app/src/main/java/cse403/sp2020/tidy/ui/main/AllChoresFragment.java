@@ -5,21 +5,24 @@ import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ListView;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
-
-import java.util.ArrayList;
-import java.util.List;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
 import cse403.sp2020.tidy.R;
+import cse403.sp2020.tidy.data.TaskWindow;
 import cse403.sp2020.tidy.data.model.TaskModel;
-import cse403.sp2020.tidy.data.model.UserModel;
+import cse403.sp2020.tidy.ui.MainActivity;
 
 public class AllChoresFragment extends ChoresFragment {
   protected String TAG = "ALL_CHORES";
-  protected List<TaskModel> prev_tasks;
+
+  // How close to either end of the list the next page starts loading
+  private static final int LOAD_AHEAD = 10;
+
+  private RecyclerView allChoreListView;
 
   @Override
   public View onCreateView(
@@ -28,28 +31,47 @@ public class AllChoresFragment extends ChoresFragment {
       @Nullable Bundle savedInstanceState) {
 
     final View frag = inflater.inflate(R.layout.allchores_fragment, container, false);
-    ListView allChoreListView = frag.findViewById(R.id.all_chores_list);
+    allChoreListView = frag.findViewById(R.id.all_chores_list);
     addOnClick(frag.findViewById(R.id.all_chores_add));
 
     frag.findViewById(R.id.all_chores_add);
-    choreList = new ChoreListArrayAdapter<>(getContext(), new ArrayList<>(), model, false);
+    final LinearLayoutManager layoutManager = new LinearLayoutManager(getContext());
+    allChoreListView.setLayoutManager(layoutManager);
+    choreList = new ChoreListAdapter(model, userId, false);
     allChoreListView.setAdapter(choreList);
+    // Rows keep their place when pages are added or released above them, since the changes are
+    // handed to the list as inserts and removals
+    allChoreListView.addOnScrollListener(
+        new RecyclerView.OnScrollListener() {
+          @Override
+          public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+            int first = layoutManager.findFirstVisibleItemPosition();
+            int last = layoutManager.findLastVisibleItemPosition();
+            moveWindow(first, last - first + 1, choreList.getItemCount());
+          }
+        });
+    showUsers();
+    showChores();
     return frag;
   }
 
   @Override
-  public void updateChoreList(List<TaskModel> tasks) {
-    choreList.clear();
-    choreList.addAll(tasks);
-    prev_tasks = tasks;
+  public void onDestroyView() {
+    super.onDestroyView();
+    allChoreListView = null;
   }
 
-  @Override
-  public void updateUserList(List<UserModel> users) {
-    choreList.clear();
-    choreList.setUsers(users);
-    if (this.prev_tasks != null) {
-      choreList.addAll(prev_tasks);
+  // Loads the next page near the end of the list and the previous one near the start
+  private void moveWindow(int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+    MainActivity activity = (MainActivity) getActivity();
+    TaskWindow window = activity == null ? null : activity.getTaskWindow();
+    if (window == null || totalItemCount == 0) {
+      return;
+    }
+    if (firstVisibleItem + visibleItemCount >= totalItemCount - LOAD_AHEAD) {
+      window.extendForward();
+    } else if (firstVisibleItem <= LOAD_AHEAD) {
+      window.extendBackward();
     }
   }
 
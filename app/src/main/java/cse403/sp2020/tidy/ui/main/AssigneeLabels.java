@@ -0,0 +1,54 @@
+package cse403.sp2020.tidy.ui.main;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import cse403.sp2020.tidy.data.model.UserModel;
+
+/**
+ * The assignee text shown on chore rows. Names are built once when the users change, so binding a
+ * row only looks one up and doesn't allocate.
+ */
+class AssigneeLabels {
+  static final String MINE = "Mine" + '\u00A0';
+  static final String UNKNOWN = "";
+
+  private final String userId;
+  private Map<String, String> namesById;
+
+  /** @param userId firebase id of the user of the app, whose chores are labelled as theirs */
+  AssigneeLabels(String userId) {
+    this.userId = userId;
+    this.namesById = new HashMap<>();
+  }
+
+  /**
+   * Builds the names of the users shown as assignees.
+   *
+   * @param users users of the household, null for none
+   */
+  void setUsers(List<UserModel> users) {
+    Map<String, String> names = new HashMap<>();
+    if (users != null) {
+      for (UserModel user : users) {
+        names.put(user.getFirebaseId(), user.getFirstName() + " " + user.getLastName() + '\u00A0');
+      }
+    }
+    namesById = names;
+  }
+
+  /** @return true if the chore is assigned to the user of the app */
+  boolean isMine(String assignedTo) {
+    return userId != null && userId.equals(assignedTo);
+  }
+
+  /** @return the text shown for the assignee of a chore, empty if the user is not known yet */
+  String label(String assignedTo) {
+    if (isMine(assignedTo)) {
+      return MINE;
+    }
+    String name = assignedTo == null ? null : namesById.get(assignedTo);
+    return name == null ? UNKNOWN : name;
+  }
+}
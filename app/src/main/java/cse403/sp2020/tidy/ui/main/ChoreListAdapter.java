@@ -0,0 +1,387 @@
+package cse403.sp2020.tidy.ui.main;
+
+import android.app.Dialog;
+import android.content.Context;
+import android.content.res.ColorStateList;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.CheckBox;
+import android.widget.EditText;
+import android.widget.ImageButton;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.annotation.NonNull;
+import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.List;
+import java.util.Objects;
+
+import cse403.sp2020.tidy.R;
+import cse403.sp2020.tidy.data.ModelInterface;
+import cse403.sp2020.tidy.data.model.TaskModel;
+import cse403.sp2020.tidy.data.model.UserModel;
+
+/**
+ * Shows chores in a RecyclerView. New lists are diffed against the shown one off the main thread,
+ * so only the rows of chores that changed are bound again, and a chore that was only checked off
+ * or reassigned just has that part of its row updated.
+ *
+ * <p>Binding a row doesn't allocate. Every row shares the same listeners, which find the chore
+ * through the holder tagged on their view, and assignee names and colors are looked up once.
+ */
+public class ChoreListAdapter extends RecyclerView.Adapter<ChoreListAdapter.ChoreHolder> {
+  private static final String TAG = "ChoreListAdapter";
+
+  // Parts of a row that can be bound on their own
+  private static final Object PAYLOAD_COMPLETED = "completed";
+  private static final Object PAYLOAD_ASSIGNEE = "assignee";
+
+  private static final DiffUtil.ItemCallback<TaskModel> DIFF_CALLBACK =
+      new DiffUtil.ItemCallback<TaskModel>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull TaskModel oldTask, @NonNull TaskModel newTask) {
+          return Objects.equals(oldTask.getTaskId(), newTask.getTaskId());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull TaskModel oldTask, @NonNull TaskModel newTask) {
+          // Unchanged tasks are the same shared object
+          return oldTask == newTask
+              || (sameText(oldTask, newTask)
+                  && oldTask.isCompleted() == newTask.isCompleted()
+                  && Objects.equals(oldTask.getAssignedTo(), newTask.getAssignedTo()));
+        }
+
+        @Override
+        public Object getChangePayload(@NonNull TaskModel oldTask, @NonNull TaskModel newTask) {
+          if (!sameText(oldTask, newTask)) {
+            return null;
+          }
+          boolean completed = oldTask.isCompleted() != newTask.isCompleted();
+          boolean assignee = !Objects.equals(oldTask.getAssignedTo(), newTask.getAssignedTo());
+          if (completed && !assignee) {
+            return PAYLOAD_COMPLETED;
+          }
+          if (assignee && !completed) {
+            return PAYLOAD_ASSIGNEE;
+          }
+          return null;
+        }
+      };
+
+  private final AsyncListDiffer<TaskModel> differ;
+  private final ModelInterface model;
+  private final boolean all_toggleable;
+  private final AssigneeLabels labels;
+
+  // Resolved from the first row's context
+  private ColorStateList mineColor;
+  private ColorStateList roommateColor;
+
+  // Shared by every row, the row's holder is the tag of the clicked view
+  private final View.OnClickListener rowClick;
+  private final View.OnClickListener checkBoxClick;
+  private final View.OnLongClickListener rowLongClick;
+  private final View.OnClickListener priorityDownClick;
+  private final View.OnClickListener priorityUpClick;
+
+  ChoreListAdapter(ModelInterface model, String userId, boolean toggleable) {
+    this.differ = new AsyncListDiffer<>(this, DIFF_CALLBACK);
+    this.model = model;
+    this.all_toggleable = toggleable;
+    this.labels = new AssigneeLabels(userId);
+    this.rowClick = view -> toggleCompleted((ChoreHolder) view.getTag(), false);
+    this.checkBoxClick = view -> toggleCompleted((ChoreHolder) view.getTag(), true);
+    this.rowLongClick =
+        view -> {
+          showEditDialog((ChoreHolder) view.getTag());
+          return true;
+        };
+    // increases the priority number (lower priority)
+    this.priorityDownClick = view -> adjustPriority((ChoreHolder) view.getTag(), 1);
+    // decreases the priority number (higher priority)
+    this.priorityUpClick = view -> adjustPriority((ChoreHolder) view.getTag(), -1);
+    setHasStableIds(true);
+  }
+
+  /**
+   * Shows a new list of chores. The difference to the current list is worked out in the background
+   * and only the changed rows are updated.
+   *
+   * @param chores chores to show, in order
+   */
+  void submitList(List<TaskModel> chores) {
+    differ.submitList(chores);
+  }
+
+  /** @return the chores currently shown, in order */
+  List<TaskModel> getCurrentList() {
+    return differ.getCurrentList();
+  }
+
+  /**
+   * Sets the users shown as assignees. Rows can be drawn before the model has loaded, so they
+   * don't look users up in the model.
+   *
+   * @param users users of the household, may be saved ones from the last launch
+   */
+  void setUsers(List<UserModel> users) {
+    labels.setUsers(users);
+    // Only the assignee of each row can change
+    notifyItemRangeChanged(0, getItemCount(), PAYLOAD_ASSIGNEE);
+  }
+
+  @Override
+  public int getItemCount() {
+    return differ.getCurrentList().size();
+  }
+
+  @Override
+  public long getItemId(int position) {
+    // Stable across lists, so rows keep their views, and nothing is kept per task
+    return stableId(differ.getCurrentList().get(position).getTaskId());
+  }
+
+  // 64-bit FNV-1a hash of a task id, ids of different tasks are very unlikely to collide
+  private static long stableId(String taskId) {
+    long hash = 0xcbf29ce484222325L;
+    if (taskId != null) {
+      for (int i = 0; i < taskId.length(); i++) {
+        hash ^= taskId.charAt(i);
+        hash *= 0x100000001b3L;
+      }
+    }
+    return hash == RecyclerView.NO_ID ? 0 : hash;
+  }
+
+  @NonNull
+  @Override
+  public ChoreHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+    View v =
+        LayoutInflater.from(parent.getContext())
+            .inflate(R.layout.chore_list_element, parent, false);
+    if (mineColor == null) {
+      Context context = parent.getContext();
+      mineColor = ContextCompat.getColorStateList(context, R.color.colorAccent);
+      roommateColor = ContextCompat.getColorStateList(context, R.color.colorPrimaryDark);
+    }
+    return new ChoreHolder(v);
+  }
+
+  @Override
+  public void onBindViewHolder(@NonNull ChoreHolder holder, int position) {
+    TaskModel chore = differ.getCurrentList().get(position);
+    holder.chore_name.setText(chore.getName());
+    holder.chore_description.setText(chore.getDescription());
+    holder.complete.setChecked(chore.isCompleted());
+    bindAssignee(holder, chore);
+  }
+
+  @Override
+  public void onBindViewHolder(
+      @NonNull ChoreHolder holder, int position, @NonNull List<Object> payloads) {
+    if (payloads.isEmpty()) {
+      onBindViewHolder(holder, position);
+      return;
+    }
+    TaskModel chore = differ.getCurrentList().get(position);
+    for (Object payload : payloads) {
+      if (payload == PAYLOAD_COMPLETED) {
+        holder.complete.setChecked(chore.isCompleted());
+      } else if (payload == PAYLOAD_ASSIGNEE) {
+        bindAssignee(holder, chore);
+      }
+    }
+  }
+
+  // Fills in who the chore is assigned to and whether this user can check it off
+  private void bindAssignee(ChoreHolder holder, TaskModel chore) {
+    String uid = chore.getAssignedTo();
+    boolean mine = labels.isMine(uid);
+    holder.assigned_roommate.setText(labels.label(uid));
+    // Color state lists, setting an int color would build one for every bind
+    holder.assigned_roommate.setTextColor(mine ? mineColor : roommateColor);
+
+    holder.toggleable = this.all_toggleable || mine;
+    holder.complete.setAlpha(holder.toggleable ? 1.0f : 0.4f);
+    holder.complete.setEnabled(holder.toggleable);
+  }
+
+  // The chore shown by a holder, null while it is being removed
+  private TaskModel getChore(ChoreHolder holder) {
+    int position = holder.getAdapterPosition();
+    List<TaskModel> chores = differ.getCurrentList();
+    if (position == RecyclerView.NO_POSITION || position >= chores.size()) {
+      return null;
+    }
+    return chores.get(position);
+  }
+
+  private void toggleCompleted(ChoreHolder holder, boolean fromCheckBox) {
+    TaskModel chore = getChore(holder);
+    if (chore == null || !holder.toggleable) {
+      return;
+    }
+    // Toggle the checkbox if this is the row itself, otherwise it was already toggled by clicking
+    if (!fromCheckBox) {
+      holder.complete.toggle();
+    }
+    boolean completed = holder.complete.isChecked();
+    // Only the completed field is written
+    this.model.setTaskCompleted(
+        chore.getTaskId(),
+        completed,
+        t -> {
+          // On failure the model reads the chore again and the list rebinds the checkbox from it
+          if (t == null) {
+            Log.d(TAG, "failed to change completion status");
+          }
+        });
+  }
+
+  private void adjustPriority(ChoreHolder holder, int change) {
+    TaskModel chore = getChore(holder);
+    // Priority numbers stop at 0
+    if (chore == null || chore.getPriority() + change < 0) {
+      return;
+    }
+    final Context context = holder.itemView.getContext();
+    model.adjustTaskPriority(
+        chore.getTaskId(),
+        change,
+        updatedTask -> {
+          if (updatedTask == null) {
+            Log.e(TAG, "Failed to update task");
+            Toast.makeText(context, "Failed to change priority", Toast.LENGTH_SHORT).show();
+          } else {
+            Log.d(TAG, "Task updated");
+          }
+        });
+  }
+
+  private void showEditDialog(ChoreHolder holder) {
+    final TaskModel task = getChore(holder);
+    if (task == null) {
+      return;
+    }
+    final Dialog dialog = new Dialog(holder.itemView.getContext());
+    dialog.setContentView(R.layout.add_chore_dialog);
+    ((EditText) dialog.findViewById(R.id.add_chore_dialog_name)).setText(task.getName());
+    ((EditText) dialog.findViewById(R.id.add_chore_dialog_description))
+        .setText(task.getDescription());
+    ((EditText) dialog.findViewById(R.id.add_chore_dialog_priority))
+        .setText(String.valueOf(task.getPriority()));
+    dialog.show();
+    dialog.findViewById(R.id.add_chore_dialog_delete).setVisibility(View.VISIBLE);
+    dialog
+        .findViewById(R.id.add_chore_dialog_delete)
+        .setOnClickListener(
+            viewDelete -> {
+              model.removeTask(
+                  task,
+                  deletedTask -> {
+                    if (deletedTask == null) {
+                      Log.e(TAG, "Task failed to delete");
+                    } else {
+                      Log.d(TAG, "Task deleted successfully");
+                    }
+                  });
+              dialog.dismiss();
+            });
+    dialog
+        .findViewById(R.id.add_chore_dialog_cancel)
+        .setOnClickListener(view1 -> dialog.dismiss());
+    dialog
+        .findViewById(R.id.add_chore_dialog_submit)
+        .setOnClickListener(
+            view12 -> {
+              String name =
+                  ((EditText) dialog.findViewById(R.id.add_chore_dialog_name))
+                      .getText()
+                      .toString();
+              String description =
+                  ((EditText) dialog.findViewById(R.id.add_chore_dialog_description))
+                      .getText()
+                      .toString();
+              String priorityStr =
+                  ((EditText) dialog.findViewById(R.id.add_chore_dialog_priority))
+                      .getText()
+                      .toString();
+              boolean valid = !name.isEmpty();
+              valid &= !description.isEmpty();
+              valid &= !priorityStr.isEmpty();
+              int priority = -1; // Dummy value that will never be used
+              try {
+                priority = Integer.parseInt(priorityStr, 10);
+              } catch (NumberFormatException ex) {
+                valid = false;
+              }
+              if (valid) {
+                // Update a copy, the original is shared with the model
+                TaskModel updated = new TaskModel(task);
+                updated.setName(name);
+                updated.setDescription(description);
+                updated.setPriority(priority);
+                model.updateTask(
+                    updated,
+                    updatedTask -> {
+                      if (updatedTask == null) {
+                        Log.e(TAG, "Failed to update task");
+                      } else {
+                        Log.d(TAG, "Task updated");
+                      }
+                    });
+
+                dialog.dismiss();
+              } else {
+                Toast.makeText(
+                        holder.itemView.getContext(),
+                        "All fields must be filled",
+                        Toast.LENGTH_SHORT)
+                    .show();
+              }
+            });
+  }
+
+  private static boolean sameText(TaskModel oldTask, TaskModel newTask) {
+    return Objects.equals(oldTask.getName(), newTask.getName())
+        && Objects.equals(oldTask.getDescription(), newTask.getDescription());
+  }
+
+  /** Views of one row, tagged on the views with listeners so they can find the row */
+  class ChoreHolder extends RecyclerView.ViewHolder {
+    TextView chore_name;
+    TextView chore_description;
+    TextView assigned_roommate;
+    CheckBox complete;
+    ImageButton priority_up;
+    ImageButton priority_down;
+    boolean toggleable;
+
+    ChoreHolder(View v) {
+      super(v);
+      chore_name = v.findViewById(R.id.chore_list_element_name);
+      chore_description = v.findViewById(R.id.chore_list_element_description);
+      assigned_roommate = v.findViewById(R.id.chore_list_element_roommate);
+      complete = v.findViewById(R.id.checkBox);
+      priority_up = v.findViewById(R.id.increase_priority);
+      priority_down = v.findViewById(R.id.decrease_priority);
+
+      v.setTag(this);
+      complete.setTag(this);
+      priority_down.setTag(this);
+      priority_up.setTag(this);
+      v.setOnClickListener(rowClick);
+      v.setOnLongClickListener(rowLongClick);
+      complete.setOnClickListener(checkBoxClick);
+      priority_down.setOnClickListener(priorityDownClick);
+      priority_up.setOnClickListener(priorityUpClick);
+    }
+  }
+}
@@ -25,8 +25,10 @@ import cse403.sp2020.tidy.ui.MainActivity;
 public abstract class ChoresFragment extends Fragment {
   protected String TAG = "CHORE_FRAGMENT";
   protected ModelInterface model;
-  protected ChoreListArrayAdapter<TaskModel> choreList;
+  protected ChoreListAdapter choreList;
   protected List<UserModel> userList;
+  protected List<TaskModel> chores; // Kept until the list view exists
+  protected String userId;
 
   /**
    * On fragment creation gets the firebase model interface and arguments from MainActivity
@@ -37,8 +39,10 @@ public abstract class ChoresFragment extends Fragment {
   public void onCreate(@Nullable Bundle savedInstanceState) {
     super.onCreate(savedInstanceState);
     model = ((MainActivity) Objects.requireNonNull(getActivity())).getModelInterface();
-    Bundle b = getArguments(); // TODO: Needed?
+    Bundle b = getArguments();
     assert b != null;
+    // Known before the model has loaded the user
+    userId = b.getString("tidy_user_id");
   }
 
   /**
@@ -109,11 +113,40 @@ public abstract class ChoresFragment extends Fragment {
         });
   }
 
-  /** Handles all updates related to a new/updated list of tasks */
-  public abstract void updateChoreList(List<TaskModel> tasks);
+  /**
+   * Shows a new/updated list of tasks, or keeps it until the list view is created
+   *
+   * @param tasks sorted tasks this fragment should show
+   */
+  public void updateChoreList(List<TaskModel> tasks) {
+    chores = tasks;
+    showChores();
+  }
+
+  /** Hands the latest tasks to the adapter, call once the adapter is created */
+  protected void showChores() {
+    if (choreList != null && chores != null) {
+      // Diffed against what is shown, only changed rows are bound again
+      choreList.submitList(chores);
+    }
+  }
 
-  /** Handles updates to new users */
-  public abstract void updateUserList(List<UserModel> users);
+  /**
+   * Shows new/updated users as assignees, or keeps them until the list view is created
+   *
+   * @param users users of the household
+   */
+  public void updateUserList(List<UserModel> users) {
+    userList = users;
+    showUsers();
+  }
+
+  /** Hands the latest users to the adapter, call once the adapter is created */
+  protected void showUsers() {
+    if (choreList != null && userList != null) {
+      choreList.setUsers(userList);
+    }
+  }
 
   /** Handles creating setting a new task */
   public abstract void addTask(TaskModel newTask);
@@ -5,21 +5,17 @@ import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ListView;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
-
-import java.util.ArrayList;
-import java.util.List;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
 import cse403.sp2020.tidy.R;
 import cse403.sp2020.tidy.data.model.TaskModel;
-import cse403.sp2020.tidy.data.model.UserModel;
 
 public class MyChoresFragment extends ChoresFragment {
   protected String TAG = "MY_CHORES";
-  List<TaskModel> oldTasks;
 
   @Override
   public View onCreateView(
@@ -28,37 +24,22 @@ public class MyChoresFragment extends ChoresFragment {
       @Nullable Bundle savedInstanceState) {
 
     final View frag = inflater.inflate(R.layout.mychores_fragment, container, false);
-    ListView allChoreListView = frag.findViewById(R.id.my_chores_list);
+    RecyclerView allChoreListView = frag.findViewById(R.id.my_chores_list);
     addOnClick(frag.findViewById(R.id.my_chores_add));
 
     frag.findViewById(R.id.my_chores_add);
-    choreList = new ChoreListArrayAdapter<>(getContext(), new ArrayList<>(), model, true);
+    allChoreListView.setLayoutManager(new LinearLayoutManager(getContext()));
+    choreList = new ChoreListAdapter(model, userId, true);
     allChoreListView.setAdapter(choreList);
+    showUsers();
+    showChores();
     return frag;
   }
 
-  @Override
-  public void updateChoreList(List<TaskModel> tasks) {
-    choreList.clear();
-
-    // Get all user related chores
-    for (TaskModel task : tasks) {
-      if (model.getCurrentUser().getFirebaseId() != null
-          && model.getCurrentUser().getFirebaseId().equals(task.getAssignedTo())) {
-        choreList.add(task);
-      }
-    }
-  }
-
-  @Override
-  public void updateUserList(List<UserModel> users) {
-    choreList.setUsers(users);
-  }
-
   @Override
   public void addTask(TaskModel newTask) {
     // Set user first
-    newTask.setAssignedTo(model.getCurrentUser().getFirebaseId());
+    newTask.setAssignedTo(userId);
     model.addTask(
         newTask,
         task -> {
@@ -0,0 +1,163 @@
+package cse403.sp2020.tidy.data;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+import cse403.sp2020.tidy.data.model.TaskModel;
+import cse403.sp2020.tidy.data.model.UserModel;
+
+/**
+ * Compares the allocations done per task change when every reader copies the mirrored tasks and
+ * the current user (the old getTasks/getCurrentUser behaviour) against sharing the mirror's
+ * snapshot and the stored user.
+ */
+public class SnapshotAllocationTest {
+  private static final int NUM_TASKS = 400;
+  private static final int NUM_EVENTS = 2000;
+
+  // Screens reading the tasks after each change
+  private static final int NUM_READERS = 3;
+
+  // Nothing is parsed, tasks are put in directly
+  private DocumentMirror<TaskModel> mirror;
+  private List<TaskModel> tasks;
+  private List<TaskModel> changedTasks;
+  private UserModel mutableUser;
+  private UserModel sharedUser;
+
+  // Keeps results reachable so the JIT can't drop the allocations
+  private long sink;
+
+  @Before
+  public void setUp() {
+    mirror = new DocumentMirror<>(null);
+    tasks = new ArrayList<>();
+    changedTasks = new ArrayList<>();
+    for (int i = 0; i < NUM_TASKS; i++) {
+      TaskModel task = new TaskModel();
+      task.setTaskId("task" + i);
+      task.setName("Task " + i);
+      task.setAssignedTo(i % 4 == 0 ? "me" : "roommate");
+      tasks.add(task);
+      mirror.put(task.getTaskId(), task);
+
+      // Built ahead so the events only measure the mirror and its readers
+      TaskModel changed = new TaskModel(task);
+      changed.setCompleted(true);
+      changedTasks.add(changed);
+    }
+
+    mutableUser = new UserModel();
+    mutableUser.setFirebaseId("me");
+    List<String> preferences = new ArrayList<>();
+    for (TaskModel task : tasks) {
+      preferences.add(task.getTaskId());
+    }
+    mutableUser.setPreferences(preferences);
+    sharedUser = new UserModel(mutableUser);
+  }
+
+  @Test
+  public void snapshotIsShared() {
+    SnapshotList<TaskModel> snapshot = mirror.snapshot();
+    assertEquals(NUM_TASKS, snapshot.size());
+    assertSame(snapshot, mirror.snapshot());
+    try {
+      snapshot.remove(0);
+      fail("Snapshot should not be modifiable");
+    } catch (UnsupportedOperationException expected) {
+      // expected
+    }
+    assertSame(tasks.get(0), snapshot.get(0));
+
+    // A change builds a new snapshot and leaves the old one as it was
+    mirror.put("task0", changedTasks.get(0));
+    SnapshotList<TaskModel> changed = mirror.snapshot();
+    assertNotSame(snapshot, changed);
+    assertTrue(changed.getVersion() > snapshot.getVersion());
+    assertFalse(snapshot.get(0).isCompleted());
+    assertTrue(changed.get(0).isCompleted());
+  }
+
+  @Test
+  public void sharedSnapshotsAllocateLess() {
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+    com.sun.management.ThreadMXBean allocBean = (com.sun.management.ThreadMXBean) bean;
+    assumeTrue(allocBean.isThreadAllocatedMemorySupported());
+    allocBean.setThreadAllocatedMemoryEnabled(true);
+
+    // Warm up both paths before measuring
+    for (int i = 0; i < NUM_EVENTS; i++) {
+      copyingEvent(i);
+      sharingEvent(i);
+    }
+
+    long threadId = Thread.currentThread().getId();
+    long start = allocBean.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < NUM_EVENTS; i++) {
+      copyingEvent(i);
+    }
+    long copying = (allocBean.getThreadAllocatedBytes(threadId) - start) / NUM_EVENTS;
+
+    start = allocBean.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < NUM_EVENTS; i++) {
+      sharingEvent(i);
+    }
+    long sharing = (allocBean.getThreadAllocatedBytes(threadId) - start) / NUM_EVENTS;
+
+    assertTrue(sink != 0);
+    assertTrue(
+        "Expected at least 4x fewer bytes per event than " + copying + ", got " + sharing,
+        sharing * 4 < copying);
+  }
+
+  // Changes one task, alternating between its two versions
+  private void changeTask(int event) {
+    TaskModel task = changedTasks.get(event % NUM_TASKS);
+    if (mirror.get(task.getTaskId()) == task) {
+      task = tasks.get(event % NUM_TASKS);
+    }
+    mirror.put(task.getTaskId(), task);
+  }
+
+  // Every reader copies the tasks, then copies the current user for every task
+  private void copyingEvent(int event) {
+    changeTask(event);
+    for (int reader = 0; reader < NUM_READERS; reader++) {
+      List<TaskModel> copy = new ArrayList<>(mirror.snapshot());
+      List<TaskModel> mine = new ArrayList<>();
+      for (TaskModel task : copy) {
+        if (new UserModel(mutableUser).getFirebaseId() != null
+            && new UserModel(mutableUser).getFirebaseId().equals(task.getAssignedTo())) {
+          mine.add(task);
+        }
+      }
+      sink += mine.size();
+    }
+  }
+
+  // Every reader shares the snapshot built once for the change, the user is read without copying
+  private void sharingEvent(int event) {
+    changeTask(event);
+    for (int reader = 0; reader < NUM_READERS; reader++) {
+      List<TaskModel> shared = mirror.snapshot();
+      List<TaskModel> mine = new ArrayList<>();
+      String userId = sharedUser.getFirebaseId();
+      for (TaskModel task : shared) {
+        if (userId != null && userId.equals(task.getAssignedTo())) {
+          mine.add(task);
+        }
+      }
+      sink += mine.size();
+    }
+  }
+}
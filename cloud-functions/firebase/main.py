@@ -163,7 +163,8 @@ def update_assignments(data, context):
                                {
                                    u'assignedTo': selected_user,
                                    u'assignedDate': now,
-                                   u'completed': False
+                                   u'completed': False,
+                                   u'completedDate': None
                                })
 
 